@@ -0,0 +1,890 @@
+/**
+ * Array-backed Red-Black Tree for the Flying Broomstick Management System
+ * Nodes are slots in parallel primitive arrays (struct-of-arrays) linked by int indices,
+ * so the tree holds no per-plate objects. Slots freed by deletions are kept on a
+ * free-list and reused by later insertions
+ * Each slot also keeps its subtree's plate and customized-plate counts, so rank,
+ * select and range counts take one root-to-leaf walk
+ * Offers the same operations as RBTree
+ */
+public class ArrayRBTree implements PlateIndex {
+    // Colors for Red-Black Tree nodes
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+    
+    // Index used in place of a null node
+    private static final int NIL = -1;
+    
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // Node fields, one slot per node
+    private int[] keys;
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private boolean[] color;
+    private boolean[] custom; // true for customized plates
+    private int[] subtreeSize; // Number of plates in the subtree rooted here
+    private int[] subtreeCustom; // Number of customized plates in the subtree rooted here
+    
+    private int root = NIL;
+    private int used = 0; // Slots handed out so far (high-water mark)
+    private int freeHead = NIL; // First free slot, chained through left[]
+    private int size = 0; // Slots currently holding a plate
+    
+    /**
+     * Constructor for an empty tree
+     */
+    public ArrayRBTree() {
+        this(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Constructor for an empty tree with room for the given number of plates
+     */
+    public ArrayRBTree(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        keys = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        color = new boolean[capacity];
+        custom = new boolean[capacity];
+        subtreeSize = new int[capacity];
+        subtreeCustom = new int[capacity];
+    }
+    
+    /**
+     * Checks if the tree is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+    
+    /**
+     * Number of plates in the tree
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Inserts a new standard license plate into the tree
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Inserts a new license plate into the tree
+     * @param key Packed license plate number
+     * @param isCustom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean isCustom) {
+        // Find the parent of the new node, bailing out on duplicates
+        int current = root;
+        int p = NIL;
+        while (current != NIL) {
+            p = current;
+            if (key < keys[current]) {
+                current = left[current];
+            } else if (key > keys[current]) {
+                current = right[current];
+            } else {
+                return false;
+            }
+        }
+        
+        int node = allocate(key, isCustom);
+        parent[node] = p;
+        
+        if (p == NIL) {
+            root = node;
+        } else if (key < keys[p]) {
+            left[p] = node;
+        } else {
+            right[p] = node;
+        }
+        
+        // Every ancestor gains one plate
+        int addedCustom = isCustom ? 1 : 0;
+        for (int a = p; a != NIL; a = parent[a]) {
+            subtreeSize[a]++;
+            subtreeCustom[a] += addedCustom;
+        }
+        
+        fixAfterInsertion(node);
+        return true;
+    }
+    
+    /**
+     * Replaces the contents of the tree with plates given in ascending order
+     * Builds a perfectly balanced tree in O(n) with no comparisons and no rotations:
+     * every level is black except the deepest, incomplete one
+     * @param keys Packed plates in strictly ascending order
+     * @param isCustom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @throws IllegalArgumentException if keys are not strictly ascending
+     */
+    @Override
+    public void loadSorted(int[] keys, boolean[] isCustom, int n) {
+        for (int i = 1; i < n; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("Plates are not in strictly ascending order at index " + i);
+            }
+        }
+        
+        // Every slot is handed out again from the start
+        root = NIL;
+        used = 0;
+        freeHead = NIL;
+        size = 0;
+        while (this.keys.length < n) {
+            grow();
+        }
+        
+        root = buildFromSorted(keys, isCustom, 0, n - 1, 0, redLevel(n));
+        if (root != NIL) {
+            parent[root] = NIL;
+        }
+    }
+    
+    /**
+     * Builds a balanced subtree from sorted[lo..hi], coloring slots at redLevel red
+     */
+    private int buildFromSorted(int[] sorted, boolean[] isCustom, int lo, int hi, int depth, int redLevel) {
+        if (lo > hi) {
+            return NIL;
+        }
+        
+        int mid = (lo + hi) >>> 1;
+        int node = allocate(sorted[mid], isCustom != null && isCustom[mid]);
+        color[node] = depth == redLevel ? RED : BLACK;
+        
+        left[node] = buildFromSorted(sorted, isCustom, lo, mid - 1, depth + 1, redLevel);
+        right[node] = buildFromSorted(sorted, isCustom, mid + 1, hi, depth + 1, redLevel);
+        if (left[node] != NIL) {
+            parent[left[node]] = node;
+        }
+        if (right[node] != NIL) {
+            parent[right[node]] = node;
+        }
+        
+        updateCounts(node);
+        return node;
+    }
+    
+    /**
+     * Depth at which a balanced tree of n nodes is incomplete (n nodes fill every level
+     * above it); only slots on that level are colored red so all paths keep the same black height
+     */
+    private static int redLevel(int n) {
+        int level = 0;
+        for (int m = n - 1; m >= 0; m = m / 2 - 1) {
+            level++;
+        }
+        return level;
+    }
+    
+    /**
+     * Checks if a license plate exists in the tree
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        return findNode(key) != NIL;
+    }
+    
+    /**
+     * Removes a license plate from the tree
+     * @param key Packed license plate number to remove
+     * @return true if removed successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        int node = findNode(key);
+        if (node == NIL) {
+            return false;
+        }
+        
+        deleteNode(node);
+        return true;
+    }
+    
+    /**
+     * Removes a license plate from the tree and reports its type
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        int node = findNode(key);
+        if (node == NIL) {
+            return NOT_FOUND;
+        }
+        
+        int type = custom[node] ? CUSTOM : STANDARD;
+        deleteNode(node);
+        return type;
+    }
+    
+    /**
+     * Internal method to delete a node and return its slot to the free-list
+     */
+    private void deleteNode(int node) {
+        // Case 1: Node has two children
+        if (left[node] != NIL && right[node] != NIL) {
+            // Copy the successor's key and delete the successor instead
+            int successor = findMin(right[node]);
+            
+            // node now holds the successor's plate, so it and its ancestors trade
+            // the deleted plate's type for the successor's
+            int delta = (custom[successor] ? 1 : 0) - (custom[node] ? 1 : 0);
+            for (int a = node; a != NIL; a = parent[a]) {
+                subtreeCustom[a] += delta;
+            }
+            
+            keys[node] = keys[successor];
+            custom[node] = custom[successor];
+            node = successor;
+        }
+        
+        // Every ancestor of the removed slot loses one plate; the slot itself
+        // counts for nothing while fixAfterDeletion may still rotate around it
+        int removedCustom = custom[node] ? 1 : 0;
+        for (int a = parent[node]; a != NIL; a = parent[a]) {
+            subtreeSize[a]--;
+            subtreeCustom[a] -= removedCustom;
+        }
+        subtreeSize[node] = 0;
+        subtreeCustom[node] = 0;
+        
+        // Case 2 & 3: Node has at most one child
+        int replacement = (left[node] != NIL) ? left[node] : right[node];
+        
+        if (replacement != NIL) {
+            // Connect replacement to parent
+            parent[replacement] = parent[node];
+            
+            if (parent[node] == NIL) {
+                root = replacement;
+            } else if (node == left[parent[node]]) {
+                left[parent[node]] = replacement;
+            } else {
+                right[parent[node]] = replacement;
+            }
+            
+            // If we're removing a black node with a red child, make the child black
+            if (color[node] == BLACK) {
+                if (color[replacement] == RED) {
+                    color[replacement] = BLACK;
+                } else {
+                    fixAfterDeletion(replacement);
+                }
+            }
+        } else if (parent[node] == NIL) {
+            // Case: No children and no parent (root)
+            root = NIL;
+        } else {
+            // Case: No children, but has parent
+            if (color[node] == BLACK) {
+                fixAfterDeletion(node);
+            }
+            
+            // Remove node from parent
+            if (node == left[parent[node]]) {
+                left[parent[node]] = NIL;
+            } else {
+                right[parent[node]] = NIL;
+            }
+        }
+        
+        release(node);
+    }
+    
+    /**
+     * Finds the slot holding the given key
+     */
+    private int findNode(int key) {
+        int current = root;
+        
+        while (current != NIL) {
+            if (key < keys[current]) {
+                current = left[current];
+            } else if (key > keys[current]) {
+                current = right[current];
+            } else {
+                return current;
+            }
+        }
+        
+        return NIL;
+    }
+    
+    /**
+     * Finds the minimum node in a subtree
+     */
+    private int findMin(int node) {
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+    
+    /**
+     * Finds the maximum node in a subtree
+     */
+    private int findMax(int node) {
+        while (right[node] != NIL) {
+            node = right[node];
+        }
+        return node;
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key in a single root-to-leaf walk
+     * @param key Packed license plate number (need not be in the tree)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
+     */
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        int node = root;
+        int floor = NIL; // Last slot we moved right from
+        int ceiling = NIL; // Last slot we moved left from
+        
+        while (node != NIL && keys[node] != key) {
+            if (key < keys[node]) {
+                ceiling = node;
+                node = left[node];
+            } else {
+                floor = node;
+                node = right[node];
+            }
+        }
+        
+        result.found = node != NIL;
+        if (result.found) {
+            // The neighbours lie below the slot when it has the matching subtree
+            if (left[node] != NIL) {
+                floor = findMax(left[node]);
+            }
+            if (right[node] != NIL) {
+                ceiling = findMin(right[node]);
+            }
+        }
+        
+        result.prev = floor != NIL ? keys[floor] : PlateCodec.NONE;
+        result.next = ceiling != NIL ? keys[ceiling] : PlateCodec.NONE;
+        return result;
+    }
+    
+    /**
+     * Counts the plates that come before a key, using subtree sizes
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        int rank = 0;
+        int node = root;
+        
+        while (node != NIL) {
+            if (key > keys[node]) {
+                // Everything in the left subtree and the slot itself come before key
+                rank += sizeOf(left[node]) + 1;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        
+        return rank;
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order, using subtree sizes
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        if (k < 0 || k >= size) {
+            return PlateCodec.NONE;
+        }
+        
+        int node = root;
+        while (true) {
+            int leftSize = sizeOf(left[node]);
+            
+            if (k < leftSize) {
+                node = left[node];
+            } else if (k == leftSize) {
+                return keys[node];
+            } else {
+                k -= leftSize + 1;
+                node = right[node];
+            }
+        }
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? size : rank(hi + 1)) - rank(lo);
+    }
+    
+    /**
+     * Counts the customized plates that come before a key, using subtree counts
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of customized plates strictly less than key
+     */
+    public int customRank(int key) {
+        int rank = 0;
+        int node = root;
+        
+        while (node != NIL) {
+            if (key > keys[node]) {
+                rank += customCountOf(left[node]) + (custom[node] ? 1 : 0);
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        
+        return rank;
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? customCountOf(root) : customRank(hi + 1)) - customRank(lo);
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        // Track the last node we moved right from; it is the best candidate so far
+        int current = root;
+        int candidate = NIL;
+        
+        while (current != NIL) {
+            if (key > keys[current]) {
+                candidate = current;
+                current = right[current];
+            } else if (key < keys[current]) {
+                current = left[current];
+            } else {
+                if (left[current] != NIL) {
+                    candidate = findMax(left[current]);
+                }
+                break;
+            }
+        }
+        
+        return candidate != NIL ? keys[candidate] : PlateCodec.NONE;
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order)
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        // Track the last node we moved left from; it is the best candidate so far
+        int current = root;
+        int candidate = NIL;
+        
+        while (current != NIL) {
+            if (key < keys[current]) {
+                candidate = current;
+                current = left[current];
+            } else if (key > keys[current]) {
+                current = right[current];
+            } else {
+                if (right[current] != NIL) {
+                    candidate = findMin(right[current]);
+                }
+                break;
+            }
+        }
+        
+        return candidate != NIL ? keys[candidate] : PlateCodec.NONE;
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        // Subtree sizes give the exact result length up front
+        int count = count(lo, hi);
+        int[] result = new int[count];
+        int next = 0;
+        for (int node = ceilingNode(lo); next < count; node = nextNode(node)) {
+            result[next++] = keys[node];
+        }
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        for (int node = ceilingNode(lo); node != NIL && keys[node] <= hi; node = nextNode(node)) {
+            visitor.visit(keys[node], custom[node]);
+        }
+    }
+    
+    /**
+     * Finds the first slot with key >= lo
+     */
+    private int ceilingNode(int lo) {
+        int node = root;
+        int first = NIL;
+        while (node != NIL) {
+            if (lo <= keys[node]) {
+                first = node;
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return first;
+    }
+    
+    /**
+     * Finds the in-order successor of a slot through parent links
+     */
+    private int nextNode(int node) {
+        if (right[node] != NIL) {
+            return findMin(right[node]);
+        }
+        
+        int p = parent[node];
+        while (p != NIL && node == right[p]) {
+            node = p;
+            p = parent[p];
+        }
+        return p;
+    }
+    
+    /**
+     * Hands out a red slot for a new key, reusing freed slots first
+     */
+    private int allocate(int key, boolean isCustom) {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = left[node];
+        } else {
+            if (used == keys.length) {
+                grow();
+            }
+            node = used++;
+        }
+        size++;
+        
+        keys[node] = key;
+        custom[node] = isCustom;
+        subtreeSize[node] = 1;
+        subtreeCustom[node] = isCustom ? 1 : 0;
+        left[node] = NIL;
+        right[node] = NIL;
+        parent[node] = NIL;
+        color[node] = RED;
+        return node;
+    }
+    
+    /**
+     * Pushes a slot onto the free-list
+     */
+    private void release(int node) {
+        left[node] = freeHead;
+        right[node] = NIL;
+        parent[node] = NIL;
+        freeHead = node;
+        size--;
+    }
+    
+    /**
+     * Doubles the capacity of every node array
+     */
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = java.util.Arrays.copyOf(keys, capacity);
+        left = java.util.Arrays.copyOf(left, capacity);
+        right = java.util.Arrays.copyOf(right, capacity);
+        parent = java.util.Arrays.copyOf(parent, capacity);
+        color = java.util.Arrays.copyOf(color, capacity);
+        custom = java.util.Arrays.copyOf(custom, capacity);
+        subtreeSize = java.util.Arrays.copyOf(subtreeSize, capacity);
+        subtreeCustom = java.util.Arrays.copyOf(subtreeCustom, capacity);
+    }
+    
+    /**
+     * Fixes Red-Black Tree properties after insertion
+     */
+    private void fixAfterInsertion(int node) {
+        color[node] = RED;
+        
+        while (node != root && colorOf(parentOf(node)) == RED) {
+            int p = parentOf(node);
+            int grandparent = parentOf(p);
+            
+            if (p == leftOf(grandparent)) {
+                int uncle = rightOf(grandparent);
+                
+                if (colorOf(uncle) == RED) {
+                    // Case 1: Uncle is red
+                    setColor(p, BLACK);
+                    setColor(uncle, BLACK);
+                    setColor(grandparent, RED);
+                    node = grandparent;
+                } else {
+                    if (node == rightOf(p)) {
+                        // Case 2: Uncle is black, node is a right child
+                        node = p;
+                        rotateLeft(node);
+                    }
+                    
+                    // Case 3: Uncle is black, node is a left child
+                    setColor(parentOf(node), BLACK);
+                    setColor(parentOf(parentOf(node)), RED);
+                    rotateRight(parentOf(parentOf(node)));
+                }
+            } else {
+                int uncle = leftOf(grandparent);
+                
+                if (colorOf(uncle) == RED) {
+                    // Case 1: Uncle is red
+                    setColor(p, BLACK);
+                    setColor(uncle, BLACK);
+                    setColor(grandparent, RED);
+                    node = grandparent;
+                } else {
+                    if (node == leftOf(p)) {
+                        // Case 2: Uncle is black, node is a left child
+                        node = p;
+                        rotateRight(node);
+                    }
+                    
+                    // Case 3: Uncle is black, node is a right child
+                    setColor(parentOf(node), BLACK);
+                    setColor(parentOf(parentOf(node)), RED);
+                    rotateLeft(parentOf(parentOf(node)));
+                }
+            }
+        }
+        
+        // Ensure root is black
+        color[root] = BLACK;
+    }
+    
+    /**
+     * Fixes Red-Black Tree properties after deletion
+     */
+    private void fixAfterDeletion(int x) {
+        while (x != root && colorOf(x) == BLACK) {
+            if (x == leftOf(parentOf(x))) {
+                int sibling = rightOf(parentOf(x));
+                
+                if (colorOf(sibling) == RED) {
+                    // Case 1: Sibling is red
+                    setColor(sibling, BLACK);
+                    setColor(parentOf(x), RED);
+                    rotateLeft(parentOf(x));
+                    sibling = rightOf(parentOf(x));
+                }
+                
+                if (colorOf(leftOf(sibling)) == BLACK && colorOf(rightOf(sibling)) == BLACK) {
+                    // Case 2: Sibling is black, both of sibling's children are black
+                    setColor(sibling, RED);
+                    x = parentOf(x);
+                } else {
+                    if (colorOf(rightOf(sibling)) == BLACK) {
+                        // Case 3: Sibling is black, left child is red, right child is black
+                        setColor(leftOf(sibling), BLACK);
+                        setColor(sibling, RED);
+                        rotateRight(sibling);
+                        sibling = rightOf(parentOf(x));
+                    }
+                    
+                    // Case 4: Sibling is black, right child is red
+                    setColor(sibling, colorOf(parentOf(x)));
+                    setColor(parentOf(x), BLACK);
+                    setColor(rightOf(sibling), BLACK);
+                    rotateLeft(parentOf(x));
+                    x = root; // End loop
+                }
+            } else {
+                int sibling = leftOf(parentOf(x));
+                
+                if (colorOf(sibling) == RED) {
+                    // Case 1: Sibling is red
+                    setColor(sibling, BLACK);
+                    setColor(parentOf(x), RED);
+                    rotateRight(parentOf(x));
+                    sibling = leftOf(parentOf(x));
+                }
+                
+                if (colorOf(rightOf(sibling)) == BLACK && colorOf(leftOf(sibling)) == BLACK) {
+                    // Case 2: Sibling is black, both of sibling's children are black
+                    setColor(sibling, RED);
+                    x = parentOf(x);
+                } else {
+                    if (colorOf(leftOf(sibling)) == BLACK) {
+                        // Case 3: Sibling is black, right child is red, left child is black
+                        setColor(rightOf(sibling), BLACK);
+                        setColor(sibling, RED);
+                        rotateLeft(sibling);
+                        sibling = leftOf(parentOf(x));
+                    }
+                    
+                    // Case 4: Sibling is black, left child is red
+                    setColor(sibling, colorOf(parentOf(x)));
+                    setColor(parentOf(x), BLACK);
+                    setColor(leftOf(sibling), BLACK);
+                    rotateRight(parentOf(x));
+                    x = root; // End loop
+                }
+            }
+        }
+        
+        // Ensure the fixed node is black
+        setColor(x, BLACK);
+    }
+    
+    /**
+     * Left rotate operation on slot indices
+     */
+    private void rotateLeft(int x) {
+        if (x == NIL) return;
+        
+        int y = right[x];
+        right[x] = left[y];
+        
+        if (left[y] != NIL) {
+            parent[left[y]] = x;
+        }
+        
+        parent[y] = parent[x];
+        
+        if (parent[x] == NIL) {
+            root = y;
+        } else if (x == left[parent[x]]) {
+            left[parent[x]] = y;
+        } else {
+            right[parent[x]] = y;
+        }
+        
+        left[y] = x;
+        parent[x] = y;
+        
+        updateCounts(x);
+        updateCounts(y);
+    }
+    
+    /**
+     * Right rotate operation on slot indices
+     */
+    private void rotateRight(int x) {
+        if (x == NIL) return;
+        
+        int y = left[x];
+        left[x] = right[y];
+        
+        if (right[y] != NIL) {
+            parent[right[y]] = x;
+        }
+        
+        parent[y] = parent[x];
+        
+        if (parent[x] == NIL) {
+            root = y;
+        } else if (x == right[parent[x]]) {
+            right[parent[x]] = y;
+        } else {
+            left[parent[x]] = y;
+        }
+        
+        right[y] = x;
+        parent[x] = y;
+        
+        updateCounts(x);
+        updateCounts(y);
+    }
+    
+    /**
+     * Helper methods for accessing node properties with NIL checks
+     */
+    private int sizeOf(int node) {
+        return node == NIL ? 0 : subtreeSize[node];
+    }
+    
+    private int customCountOf(int node) {
+        return node == NIL ? 0 : subtreeCustom[node];
+    }
+    
+    private void updateCounts(int node) {
+        subtreeSize[node] = sizeOf(left[node]) + sizeOf(right[node]) + 1;
+        subtreeCustom[node] = customCountOf(left[node]) + customCountOf(right[node]) + (custom[node] ? 1 : 0);
+    }
+    
+    private boolean colorOf(int node) {
+        return node == NIL ? BLACK : color[node];
+    }
+    
+    private int parentOf(int node) {
+        return node == NIL ? NIL : parent[node];
+    }
+    
+    private int leftOf(int node) {
+        return node == NIL ? NIL : left[node];
+    }
+    
+    private int rightOf(int node) {
+        return node == NIL ? NIL : right[node];
+    }
+    
+    private void setColor(int node, boolean c) {
+        if (node != NIL) {
+            color[node] = c;
+        }
+    }
+}
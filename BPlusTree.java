@@ -0,0 +1,699 @@
+import java.util.Arrays;
+
+/**
+ * B+tree for the Flying Broomstick Management System
+ * Plates live only in the leaves, as sorted packed keys in primitive arrays, and
+ * every leaf links to its neighbours. Range queries walk the leaf chain
+ * sequentially, and predecessor/successor are answered inside one leaf array
+ * (or at the end of the neighbouring one) instead of by a pointer walk
+ * Inner nodes have a wide fanout and keep the plate and customized-plate counts
+ * of each child, so rank, select and range counts stay O(log n)
+ * Nodes are split when they overflow and merged or refilled from a sibling when
+ * they drop below half full, so every leaf except a lone root is at least half full
+ * Offers the same operations as RBTree
+ */
+public class BPlusTree implements PlateIndex {
+    private static final int LEAF_CAPACITY = 64; // Most plates in a leaf
+    private static final int INNER_CAPACITY = 64; // Most children of an inner node
+    
+    private Node root = new Leaf();
+    private int size = 0; // Number of plates
+    
+    // Results passed up by the recursive insert and remove
+    private boolean inserted;
+    private int splitKey;
+    private int removedType;
+    
+    /**
+     * Common part of leaves and inner nodes
+     */
+    private abstract static class Node {
+        int count; // Plates in a leaf, children of an inner node
+    }
+    
+    /**
+     * Leaf node: sorted plates and their types, linked to the neighbouring leaves
+     */
+    private static final class Leaf extends Node {
+        final int[] keys = new int[LEAF_CAPACITY + 1]; // One spare slot until the overflow is split
+        final boolean[] custom = new boolean[LEAF_CAPACITY + 1]; // true for customized plates
+        Leaf prev, next; // Neighbouring leaves in key order
+    }
+    
+    /**
+     * Inner node: children[i] holds the plates below keys[i] and at or above keys[i - 1]
+     */
+    private static final class Inner extends Node {
+        final int[] keys = new int[INNER_CAPACITY]; // Separators, one fewer than children
+        final Node[] children = new Node[INNER_CAPACITY + 1];
+        final int[] sizes = new int[INNER_CAPACITY + 1]; // Plates under each child
+        final int[] customSizes = new int[INNER_CAPACITY + 1]; // Customized plates under each child
+    }
+    
+    /**
+     * Checks if the tree is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Number of plates in the tree
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Inserts a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Inserts a plate
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        inserted = false;
+        Node right = insert(root, key, custom);
+        
+        if (right != null) {
+            // The root split; grow the tree by one level
+            Inner newRoot = new Inner();
+            newRoot.children[0] = root;
+            newRoot.children[1] = right;
+            newRoot.keys[0] = splitKey;
+            newRoot.count = 2;
+            updateCounts(newRoot, 0);
+            updateCounts(newRoot, 1);
+            root = newRoot;
+        }
+        
+        if (inserted) {
+            size++;
+        }
+        return inserted;
+    }
+    
+    /**
+     * Checks if a plate exists
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        Leaf leaf = findLeaf(key);
+        int pos = lowerBound(leaf.keys, leaf.count, key);
+        return pos < leaf.count && leaf.keys[pos] == key;
+    }
+    
+    /**
+     * Deletes a plate
+     * @param key Packed license plate number to delete
+     * @return true if deleted successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Deletes a plate and reports its type
+     * @param key Packed license plate number to delete
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        removedType = NOT_FOUND;
+        remove(root, key);
+        
+        if (removedType != NOT_FOUND) {
+            size--;
+            // A root left with a single child is replaced by it
+            if (root instanceof Inner && root.count == 1) {
+                root = ((Inner) root).children[0];
+            }
+        }
+        return removedType;
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key in one descent
+     * @param key Packed license plate number (need not be in the tree)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
+     */
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        Leaf leaf = findLeaf(key);
+        int pos = lowerBound(leaf.keys, leaf.count, key);
+        result.found = pos < leaf.count && leaf.keys[pos] == key;
+        result.prev = keyBefore(leaf, pos);
+        result.next = keyAt(leaf, result.found ? pos + 1 : pos);
+        return result;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        Leaf leaf = findLeaf(key);
+        return keyBefore(leaf, lowerBound(leaf.keys, leaf.count, key));
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order)
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        Leaf leaf = findLeaf(key);
+        return keyAt(leaf, upperBound(leaf.keys, leaf.count, key));
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        final int[] result = new int[count(lo, hi)];
+        range(lo, hi, new PlateVisitor() {
+            int next = 0;
+            
+            @Override
+            public void visit(int key, boolean custom) {
+                result[next++] = key;
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor, in O(log n + k)
+     * One descent finds the first plate; the rest is a sequential scan of the leaf chain
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        if (lo > hi) {
+            return;
+        }
+        
+        Leaf leaf = findLeaf(lo);
+        int pos = lowerBound(leaf.keys, leaf.count, lo);
+        for (; leaf != null; leaf = leaf.next, pos = 0) {
+            for (; pos < leaf.count; pos++) {
+                if (leaf.keys[pos] > hi) {
+                    return;
+                }
+                visitor.visit(leaf.keys[pos], leaf.custom[pos]);
+            }
+        }
+    }
+    
+    /**
+     * Counts the plates that come before a key
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        int rank = 0;
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int i = childIndex(inner, key);
+            for (int c = 0; c < i; c++) {
+                rank += inner.sizes[c];
+            }
+            node = inner.children[i];
+        }
+        
+        Leaf leaf = (Leaf) node;
+        return rank + lowerBound(leaf.keys, leaf.count, key);
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        if (k < 0 || k >= size) {
+            return PlateCodec.NONE;
+        }
+        
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int i = 0;
+            while (k >= inner.sizes[i]) {
+                k -= inner.sizes[i++];
+            }
+            node = inner.children[i];
+        }
+        return ((Leaf) node).keys[k];
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive), in O(log n)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? size : rank(hi + 1)) - rank(lo);
+    }
+    
+    /**
+     * Counts the customized plates that come before a key
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of customized plates strictly less than key
+     */
+    public int customRank(int key) {
+        int rank = 0;
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int i = childIndex(inner, key);
+            for (int c = 0; c < i; c++) {
+                rank += inner.customSizes[c];
+            }
+            node = inner.children[i];
+        }
+        
+        Leaf leaf = (Leaf) node;
+        int pos = lowerBound(leaf.keys, leaf.count, key);
+        for (int i = 0; i < pos; i++) {
+            if (leaf.custom[i]) {
+                rank++;
+            }
+        }
+        return rank;
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive), in O(log n)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? customTotal() : customRank(hi + 1)) - customRank(lo);
+    }
+    
+    /**
+     * Number of customized plates in the tree, from the root's per-child counts
+     */
+    private int customTotal() {
+        int total = 0;
+        if (root instanceof Inner) {
+            Inner inner = (Inner) root;
+            for (int c = 0; c < inner.count; c++) {
+                total += inner.customSizes[c];
+            }
+        } else {
+            Leaf leaf = (Leaf) root;
+            for (int i = 0; i < leaf.count; i++) {
+                if (leaf.custom[i]) {
+                    total++;
+                }
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Inserts below node; sets inserted, and returns the new right sibling if node split
+     */
+    private Node insert(Node node, int key, boolean custom) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int pos = lowerBound(leaf.keys, leaf.count, key);
+            if (pos < leaf.count && leaf.keys[pos] == key) {
+                return null;
+            }
+            
+            System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, leaf.count - pos);
+            System.arraycopy(leaf.custom, pos, leaf.custom, pos + 1, leaf.count - pos);
+            leaf.keys[pos] = key;
+            leaf.custom[pos] = custom;
+            leaf.count++;
+            inserted = true;
+            return leaf.count > LEAF_CAPACITY ? splitLeaf(leaf) : null;
+        }
+        
+        Inner inner = (Inner) node;
+        int i = childIndex(inner, key);
+        Node right = insert(inner.children[i], key, custom);
+        if (!inserted) {
+            return null;
+        }
+        
+        if (right == null) {
+            inner.sizes[i]++;
+            if (custom) {
+                inner.customSizes[i]++;
+            }
+            return null;
+        }
+        
+        // Make room for the new child right after the one that split
+        int tail = inner.count - i - 1;
+        System.arraycopy(inner.keys, i, inner.keys, i + 1, tail);
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, tail);
+        System.arraycopy(inner.sizes, i + 1, inner.sizes, i + 2, tail);
+        System.arraycopy(inner.customSizes, i + 1, inner.customSizes, i + 2, tail);
+        inner.keys[i] = splitKey;
+        inner.children[i + 1] = right;
+        inner.count++;
+        updateCounts(inner, i);
+        updateCounts(inner, i + 1);
+        return inner.count > INNER_CAPACITY ? splitInner(inner) : null;
+    }
+    
+    /**
+     * Moves the upper half of an overflowing leaf into a new right neighbour
+     */
+    private Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf();
+        int keep = leaf.count / 2;
+        right.count = leaf.count - keep;
+        System.arraycopy(leaf.keys, keep, right.keys, 0, right.count);
+        System.arraycopy(leaf.custom, keep, right.custom, 0, right.count);
+        leaf.count = keep;
+        
+        right.next = leaf.next;
+        if (right.next != null) {
+            right.next.prev = right;
+        }
+        right.prev = leaf;
+        leaf.next = right;
+        
+        splitKey = right.keys[0];
+        return right;
+    }
+    
+    /**
+     * Moves the upper half of an overflowing inner node into a new right sibling
+     * The separator between the halves moves up to the parent through splitKey
+     */
+    private Inner splitInner(Inner inner) {
+        Inner right = new Inner();
+        int keep = (inner.count + 1) / 2;
+        right.count = inner.count - keep;
+        splitKey = inner.keys[keep - 1];
+        System.arraycopy(inner.keys, keep, right.keys, 0, right.count - 1);
+        System.arraycopy(inner.children, keep, right.children, 0, right.count);
+        System.arraycopy(inner.sizes, keep, right.sizes, 0, right.count);
+        System.arraycopy(inner.customSizes, keep, right.customSizes, 0, right.count);
+        Arrays.fill(inner.children, keep, inner.count, null);
+        inner.count = keep;
+        return right;
+    }
+    
+    /**
+     * Removes below node; sets removedType and repairs any child left under half full
+     */
+    private void remove(Node node, int key) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int pos = lowerBound(leaf.keys, leaf.count, key);
+            if (pos == leaf.count || leaf.keys[pos] != key) {
+                return;
+            }
+            
+            removedType = leaf.custom[pos] ? CUSTOM : STANDARD;
+            System.arraycopy(leaf.keys, pos + 1, leaf.keys, pos, leaf.count - pos - 1);
+            System.arraycopy(leaf.custom, pos + 1, leaf.custom, pos, leaf.count - pos - 1);
+            leaf.count--;
+            return;
+        }
+        
+        Inner inner = (Inner) node;
+        int i = childIndex(inner, key);
+        Node child = inner.children[i];
+        remove(child, key);
+        if (removedType == NOT_FOUND) {
+            return;
+        }
+        
+        inner.sizes[i]--;
+        if (removedType == CUSTOM) {
+            inner.customSizes[i]--;
+        }
+        
+        int min = (child instanceof Leaf) ? LEAF_CAPACITY / 2 : INNER_CAPACITY / 2;
+        if (child.count < min) {
+            // Pair the child with its left sibling, or its right one if it is first
+            int j = (i > 0) ? i - 1 : i;
+            if (child instanceof Leaf) {
+                rebalanceLeaves(inner, j, (Leaf) inner.children[j], (Leaf) inner.children[j + 1]);
+            } else {
+                rebalanceInner(inner, j, (Inner) inner.children[j], (Inner) inner.children[j + 1]);
+            }
+        }
+    }
+    
+    /**
+     * Merges two neighbouring leaves under parent, or evens them out if they do not fit in one
+     */
+    private void rebalanceLeaves(Inner parent, int j, Leaf left, Leaf right) {
+        int total = left.count + right.count;
+        
+        if (total <= LEAF_CAPACITY) {
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            System.arraycopy(right.custom, 0, left.custom, left.count, right.count);
+            left.count = total;
+            left.next = right.next;
+            if (left.next != null) {
+                left.next.prev = left;
+            }
+            removeChild(parent, j + 1);
+            updateCounts(parent, j);
+            return;
+        }
+        
+        int keep = total / 2;
+        if (left.count > keep) {
+            // Move the tail of the left leaf to the front of the right one
+            int move = left.count - keep;
+            System.arraycopy(right.keys, 0, right.keys, move, right.count);
+            System.arraycopy(right.custom, 0, right.custom, move, right.count);
+            System.arraycopy(left.keys, keep, right.keys, 0, move);
+            System.arraycopy(left.custom, keep, right.custom, 0, move);
+            right.count += move;
+        } else {
+            // Move the front of the right leaf to the tail of the left one
+            int move = keep - left.count;
+            System.arraycopy(right.keys, 0, left.keys, left.count, move);
+            System.arraycopy(right.custom, 0, left.custom, left.count, move);
+            System.arraycopy(right.keys, move, right.keys, 0, right.count - move);
+            System.arraycopy(right.custom, move, right.custom, 0, right.count - move);
+            right.count -= move;
+        }
+        left.count = keep;
+        
+        parent.keys[j] = right.keys[0];
+        updateCounts(parent, j);
+        updateCounts(parent, j + 1);
+    }
+    
+    /**
+     * Merges two neighbouring inner nodes under parent, or evens them out if they do not fit in one
+     * Separators rotate through parent.keys[j]
+     */
+    private void rebalanceInner(Inner parent, int j, Inner left, Inner right) {
+        int total = left.count + right.count;
+        
+        if (total <= INNER_CAPACITY) {
+            left.keys[left.count - 1] = parent.keys[j];
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count - 1);
+            System.arraycopy(right.children, 0, left.children, left.count, right.count);
+            System.arraycopy(right.sizes, 0, left.sizes, left.count, right.count);
+            System.arraycopy(right.customSizes, 0, left.customSizes, left.count, right.count);
+            left.count = total;
+            removeChild(parent, j + 1);
+            updateCounts(parent, j);
+            return;
+        }
+        
+        int keep = total / 2;
+        if (left.count > keep) {
+            // Move the last children of the left node to the front of the right one
+            int move = left.count - keep;
+            System.arraycopy(right.keys, 0, right.keys, move, right.count - 1);
+            System.arraycopy(right.children, 0, right.children, move, right.count);
+            System.arraycopy(right.sizes, 0, right.sizes, move, right.count);
+            System.arraycopy(right.customSizes, 0, right.customSizes, move, right.count);
+            right.keys[move - 1] = parent.keys[j];
+            System.arraycopy(left.keys, keep, right.keys, 0, move - 1);
+            System.arraycopy(left.children, keep, right.children, 0, move);
+            System.arraycopy(left.sizes, keep, right.sizes, 0, move);
+            System.arraycopy(left.customSizes, keep, right.customSizes, 0, move);
+            parent.keys[j] = left.keys[keep - 1];
+            Arrays.fill(left.children, keep, left.count, null);
+            right.count += move;
+        } else {
+            // Move the first children of the right node to the end of the left one
+            int move = keep - left.count;
+            left.keys[left.count - 1] = parent.keys[j];
+            System.arraycopy(right.keys, 0, left.keys, left.count, move - 1);
+            System.arraycopy(right.children, 0, left.children, left.count, move);
+            System.arraycopy(right.sizes, 0, left.sizes, left.count, move);
+            System.arraycopy(right.customSizes, 0, left.customSizes, left.count, move);
+            parent.keys[j] = right.keys[move - 1];
+            System.arraycopy(right.keys, move, right.keys, 0, right.count - 1 - move);
+            System.arraycopy(right.children, move, right.children, 0, right.count - move);
+            System.arraycopy(right.sizes, move, right.sizes, 0, right.count - move);
+            System.arraycopy(right.customSizes, move, right.customSizes, 0, right.count - move);
+            Arrays.fill(right.children, right.count - move, right.count, null);
+            right.count -= move;
+        }
+        left.count = keep;
+        
+        updateCounts(parent, j);
+        updateCounts(parent, j + 1);
+    }
+    
+    /**
+     * Drops child idx (idx > 0) and the separator in front of it from an inner node
+     */
+    private static void removeChild(Inner parent, int idx) {
+        int tail = parent.count - idx - 1;
+        System.arraycopy(parent.keys, idx, parent.keys, idx - 1, tail);
+        System.arraycopy(parent.children, idx + 1, parent.children, idx, tail);
+        System.arraycopy(parent.sizes, idx + 1, parent.sizes, idx, tail);
+        System.arraycopy(parent.customSizes, idx + 1, parent.customSizes, idx, tail);
+        parent.count--;
+        parent.children[parent.count] = null;
+    }
+    
+    /**
+     * Recomputes the plate counts an inner node keeps for child i
+     */
+    private static void updateCounts(Inner parent, int i) {
+        Node child = parent.children[i];
+        int plates = 0;
+        int customPlates = 0;
+        
+        if (child instanceof Leaf) {
+            Leaf leaf = (Leaf) child;
+            plates = leaf.count;
+            for (int k = 0; k < leaf.count; k++) {
+                if (leaf.custom[k]) {
+                    customPlates++;
+                }
+            }
+        } else {
+            Inner inner = (Inner) child;
+            for (int k = 0; k < inner.count; k++) {
+                plates += inner.sizes[k];
+                customPlates += inner.customSizes[k];
+            }
+        }
+        
+        parent.sizes[i] = plates;
+        parent.customSizes[i] = customPlates;
+    }
+    
+    /**
+     * Descends to the leaf whose key range covers key
+     */
+    private Leaf findLeaf(int key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+    
+    /**
+     * Largest plate before position pos of a leaf, looking into the previous leaf if needed
+     */
+    private static int keyBefore(Leaf leaf, int pos) {
+        if (pos > 0) {
+            return leaf.keys[pos - 1];
+        }
+        return leaf.prev != null ? leaf.prev.keys[leaf.prev.count - 1] : PlateCodec.NONE;
+    }
+    
+    /**
+     * Plate at position pos of a leaf, continuing into the next leaf if pos is past the end
+     */
+    private static int keyAt(Leaf leaf, int pos) {
+        if (pos < leaf.count) {
+            return leaf.keys[pos];
+        }
+        return leaf.next != null ? leaf.next.keys[0] : PlateCodec.NONE;
+    }
+    
+    /**
+     * Index of the child of an inner node whose key range covers key
+     */
+    private static int childIndex(Inner inner, int key) {
+        return upperBound(inner.keys, inner.count - 1, key);
+    }
+    
+    /**
+     * Index of the first of the n sorted values that is at least key
+     */
+    private static int lowerBound(int[] values, int n, int key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * Index of the first of the n sorted values that is greater than key
+     */
+    private static int upperBound(int[] values, int n, int key) {
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
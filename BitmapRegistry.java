@@ -0,0 +1,320 @@
+/**
+ * Direct-address bitmap registry for the Flying Broomstick Management System
+ * One bit per possible plate covers the whole 36^4 plate space in about 210 KB.
+ * Membership updates are single bit operations, and ordered queries scan
+ * 64 plates at a time using leading/trailing zero counts
+ * A Fenwick tree over the per-word popcounts answers rank, select and range
+ * counts in O(log n) without visiting the plates themselves
+ * A second bit plane records which registered plates are customized
+ * Offers the same operations as RBTree
+ */
+public class BitmapRegistry implements PlateIndex {
+    private static final int WORD_COUNT = (PlateCodec.UNIVERSE + 63) >>> 6;
+    
+    private final long[] words = new long[WORD_COUNT]; // Bit k is set if plate k is registered
+    private final long[] customWords = new long[WORD_COUNT]; // Bit k is set if plate k is customized
+    private final int[] fenwick = new int[WORD_COUNT + 1]; // Fenwick tree over per-word popcounts (1-based)
+    private int size = 0; // Number of registered plates
+    
+    /**
+     * Checks if the registry is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Number of registered plates
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Registers a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Registers a plate
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        PlateCodec.checkKey(key);
+        int w = key >>> 6;
+        long bit = 1L << key; // Shift distance is taken mod 64
+        if ((words[w] & bit) != 0) {
+            return false;
+        }
+        
+        words[w] |= bit;
+        if (custom) {
+            customWords[w] |= bit;
+        }
+        size++;
+        updateCount(w, 1);
+        return true;
+    }
+    
+    /**
+     * Checks if a plate is registered
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        return PlateCodec.isKey(key) && (words[key >>> 6] & (1L << key)) != 0;
+    }
+    
+    /**
+     * Removes a plate
+     * @param key Packed license plate number to remove
+     * @return true if removed successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Removes a plate and reports its type
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        if (!PlateCodec.isKey(key)) {
+            return NOT_FOUND;
+        }
+        
+        int w = key >>> 6;
+        long bit = 1L << key;
+        if ((words[w] & bit) == 0) {
+            return NOT_FOUND;
+        }
+        
+        int type = (customWords[w] & bit) != 0 ? CUSTOM : STANDARD;
+        words[w] &= ~bit;
+        customWords[w] &= ~bit;
+        size--;
+        updateCount(w, -1);
+        return type;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        if (key <= 0) {
+            return PlateCodec.NONE;
+        }
+        
+        int from = Math.min(key, PlateCodec.UNIVERSE) - 1;
+        int w = from >>> 6;
+        
+        // Keep only the bits at or below 'from' in its own word
+        long word = words[w] & (-1L >>> (63 - (from & 63)));
+        while (word == 0) {
+            if (--w < 0) {
+                return PlateCodec.NONE;
+            }
+            word = words[w];
+        }
+        
+        return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order)
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        if (key >= PlateCodec.UNIVERSE - 1) {
+            return PlateCodec.NONE;
+        }
+        
+        int from = Math.max(key + 1, 0);
+        int w = from >>> 6;
+        
+        // Keep only the bits at or above 'from' in its own word
+        long word = words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == WORD_COUNT) {
+                return PlateCodec.NONE;
+            }
+            word = words[w];
+        }
+        
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return new int[0];
+        }
+        
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        
+        // Size the result with a popcount pass, then walk the set bits word by word
+        int count = 0;
+        for (int w = first; w <= last; w++) {
+            count += Long.bitCount(maskedWord(w, lo, hi));
+        }
+        
+        int[] result = new int[count];
+        int next = 0;
+        for (int w = first; w <= last; w++) {
+            long word = maskedWord(w, lo, hi);
+            while (word != 0) {
+                result[next++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1; // Clear lowest set bit
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return;
+        }
+        
+        for (int w = lo >>> 6; w <= hi >>> 6; w++) {
+            long word = maskedWord(w, lo, hi);
+            long customWord = customWords[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                visitor.visit((w << 6) + bit, (customWord & (1L << bit)) != 0);
+                word &= word - 1; // Clear lowest set bit
+            }
+        }
+    }
+    
+    /**
+     * Counts the plates that come before a key
+     * @param key Packed license plate number (need not be registered)
+     * @return Number of registered plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        if (key <= 0) {
+            return 0;
+        }
+        if (key >= PlateCodec.UNIVERSE) {
+            return size;
+        }
+        
+        int w = key >>> 6;
+        return prefixCount(w) + Long.bitCount(words[w] & ((1L << key) - 1));
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        if (k < 0 || k >= size) {
+            return PlateCodec.NONE;
+        }
+        
+        // Descend the Fenwick tree to the word holding the k-th plate
+        int w = 0;
+        int remaining = k;
+        for (int step = Integer.highestOneBit(WORD_COUNT); step != 0; step >>>= 1) {
+            int next = w + step;
+            if (next <= WORD_COUNT && fenwick[next] <= remaining) {
+                w = next;
+                remaining -= fenwick[next];
+            }
+        }
+        
+        // w is now the 0-based index of that word; drop its lower set bits
+        long word = words[w];
+        for (int i = 0; i < remaining; i++) {
+            word &= word - 1;
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of registered plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? size : rank(hi + 1)) - rank(lo);
+    }
+    
+    /**
+     * Adds delta to the popcount of word w in the Fenwick tree
+     */
+    private void updateCount(int w, int delta) {
+        for (int i = w + 1; i <= WORD_COUNT; i += i & -i) {
+            fenwick[i] += delta;
+        }
+    }
+    
+    /**
+     * Number of plates in words [0, w)
+     */
+    private int prefixCount(int w) {
+        int count = 0;
+        for (int i = w; i > 0; i -= i & -i) {
+            count += fenwick[i];
+        }
+        return count;
+    }
+    
+    /**
+     * Returns word w with the bits outside [lo, hi] cleared
+     */
+    private long maskedWord(int w, int lo, int hi) {
+        long word = words[w];
+        if (w == lo >>> 6) {
+            word &= -1L << lo;
+        }
+        if (w == hi >>> 6) {
+            word &= -1L >>> (63 - (hi & 63));
+        }
+        return word;
+    }
+}
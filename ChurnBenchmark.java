@@ -0,0 +1,166 @@
+import java.util.Random;
+
+/**
+ * Add/drop churn benchmark: WAVLTree against RBTree
+ * For each registry size, preloads the same random plates into both engines, then
+ * runs the same sequence of dropLicence/addLicence pairs (a random registered plate
+ * out, a new one in) so the registry keeps its size. Reports time per operation and
+ * the rotations and rebalance steps each engine spends per drop and per add
+ * Usage: java ChurnBenchmark [pairs] [size ...]
+ */
+public class ChurnBenchmark {
+    private static final int ROUNDS = 5; // Timed rounds per engine and size; the best one is reported
+    
+    /**
+     * An engine under test together with its rebalancing counters
+     */
+    private abstract static class Subject {
+        final String name;
+        
+        Subject(String name) {
+            this.name = name;
+        }
+        
+        abstract PlateIndex create();
+        abstract long rotations(PlateIndex index);
+        abstract long rebalanceSteps(PlateIndex index);
+    }
+    
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        Subject[] subjects = {
+            new Subject("RBTree") {
+                @Override
+                PlateIndex create() {
+                    return new RBTree();
+                }
+                
+                @Override
+                long rotations(PlateIndex index) {
+                    return ((RBTree) index).rotations();
+                }
+                
+                @Override
+                long rebalanceSteps(PlateIndex index) {
+                    return ((RBTree) index).rebalanceSteps();
+                }
+            },
+            new Subject("WAVLTree") {
+                @Override
+                PlateIndex create() {
+                    return new WAVLTree();
+                }
+                
+                @Override
+                long rotations(PlateIndex index) {
+                    return ((WAVLTree) index).rotations();
+                }
+                
+                @Override
+                long rebalanceSteps(PlateIndex index) {
+                    return ((WAVLTree) index).rebalanceSteps();
+                }
+            }
+        };
+        
+        System.out.println("   plates  engine    ns/op  rot/drop  rot/add  steps/drop  steps/add");
+        for (int size : sizes) {
+            size = Math.min(size, PlateCodec.UNIVERSE / 2);
+            int[] preload = new int[size];
+            int[] drops = new int[pairs];
+            int[] adds = new int[pairs];
+            churn(size, preload, drops, adds);
+            
+            for (Subject subject : subjects) {
+                // Untimed pass: counters read around every operation
+                PlateIndex index = load(subject, preload);
+                long dropRotations = 0, addRotations = 0, dropSteps = 0, addSteps = 0;
+                for (int i = 0; i < pairs; i++) {
+                    long rotations = subject.rotations(index);
+                    long steps = subject.rebalanceSteps(index);
+                    index.remove(drops[i]);
+                    dropRotations += subject.rotations(index) - rotations;
+                    dropSteps += subject.rebalanceSteps(index) - steps;
+                    
+                    rotations = subject.rotations(index);
+                    steps = subject.rebalanceSteps(index);
+                    index.insert(adds[i], false);
+                    addRotations += subject.rotations(index) - rotations;
+                    addSteps += subject.rebalanceSteps(index) - steps;
+                }
+                
+                // Timed passes on a freshly loaded engine each round
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    index = load(subject, preload);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < pairs; i++) {
+                        index.remove(drops[i]);
+                        index.insert(adds[i], false);
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                    if (index.size() != size) {
+                        throw new IllegalStateException(subject.name + " lost plates during churn");
+                    }
+                }
+                
+                System.out.printf("%9d  %-8s %6.1f  %8.3f  %7.3f  %10.3f  %9.3f%n", size, subject.name,
+                        (double) best / (2.0 * pairs),
+                        (double) dropRotations / pairs, (double) addRotations / pairs,
+                        (double) dropSteps / pairs, (double) addSteps / pairs);
+            }
+        }
+    }
+    
+    /**
+     * Picks size distinct random plates to preload, then a drop/add sequence in which
+     * each drop is a registered plate and each add a plate not registered at that point
+     */
+    private static void churn(int size, int[] preload, int[] drops, int[] adds) {
+        Random random = new Random(size);
+        boolean[] registered = new boolean[PlateCodec.UNIVERSE];
+        int[] live = new int[size];
+        for (int i = 0; i < size; i++) {
+            int key;
+            do {
+                key = random.nextInt(PlateCodec.UNIVERSE);
+            } while (registered[key]);
+            registered[key] = true;
+            live[i] = key;
+            preload[i] = key;
+        }
+        
+        for (int i = 0; i < drops.length; i++) {
+            int slot = random.nextInt(size);
+            drops[i] = live[slot];
+            registered[live[slot]] = false;
+            
+            int key;
+            do {
+                key = random.nextInt(PlateCodec.UNIVERSE);
+            } while (registered[key]);
+            registered[key] = true;
+            live[slot] = key;
+            adds[i] = key;
+        }
+    }
+    
+    /**
+     * New engine holding the preload plates, inserted in their random order
+     */
+    private static PlateIndex load(Subject subject, int[] preload) {
+        PlateIndex index = subject.create();
+        for (int key : preload) {
+            index.insert(key, false);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free bitmap registry for the Flying Broomstick Management System
+ * Safe to share between threads: each plate owns two adjacent bits of an
+ * AtomicLongArray (registered, customized), so registering or removing a plate
+ * together with its type is a single compare-and-set on one word
+ * Plate totals are kept in striped LongAdder counters so that threads updating
+ * different plates never contend on a shared count
+ * Lookups read each word once with a volatile get and never retry, so search,
+ * predecessor, successor and range are wait-free. Scans over several words are
+ * weakly consistent: plates changed during the scan may or may not be seen
+ */
+public class ConcurrentBitmapRegistry implements PlateIndex {
+    private static final int PLATES_PER_WORD = 32; // Two bits per plate
+    private static final int WORD_COUNT = (PlateCodec.UNIVERSE + PLATES_PER_WORD - 1) / PLATES_PER_WORD;
+    private static final long PRESENT_BITS = 0x5555555555555555L; // Low bit of every pair
+    
+    private final AtomicLongArray words = new AtomicLongArray(WORD_COUNT); // Bits 2i, 2i+1: plate i registered, customized
+    private final LongAdder standardCount = new LongAdder(); // Registered standard plates
+    private final LongAdder customCount = new LongAdder(); // Registered customized plates
+    
+    /**
+     * Checks if the registry is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * Number of registered plates (exact only when no update is in progress)
+     */
+    @Override
+    public int size() {
+        return (int) (standardCount.sum() + customCount.sum());
+    }
+    
+    /**
+     * Number of registered standard plates (exact only when no update is in progress)
+     */
+    public int standardCount() {
+        return (int) standardCount.sum();
+    }
+    
+    /**
+     * Number of registered customized plates (exact only when no update is in progress)
+     */
+    public int customCount() {
+        return (int) customCount.sum();
+    }
+    
+    /**
+     * Registers a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Registers a plate; lock-free
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        PlateCodec.checkKey(key);
+        int w = key >>> 5;
+        int shift = (key & 31) << 1;
+        long bits = (custom ? 3L : 1L) << shift;
+        
+        long word;
+        do {
+            word = words.get(w);
+            if ((word & (1L << shift)) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(w, word, word | bits));
+        
+        (custom ? customCount : standardCount).increment();
+        return true;
+    }
+    
+    /**
+     * Checks if a plate is registered; wait-free
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        return PlateCodec.isKey(key) && (words.get(key >>> 5) & (1L << ((key & 31) << 1))) != 0;
+    }
+    
+    /**
+     * Removes a plate
+     * @param key Packed license plate number to remove
+     * @return true if removed successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Removes a plate and reports its type; lock-free
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        if (!PlateCodec.isKey(key)) {
+            return NOT_FOUND;
+        }
+        
+        int w = key >>> 5;
+        int shift = (key & 31) << 1;
+        
+        long word;
+        do {
+            word = words.get(w);
+            if ((word & (1L << shift)) == 0) {
+                return NOT_FOUND;
+            }
+        } while (!words.compareAndSet(w, word, word & ~(3L << shift)));
+        
+        // The successful CAS removed exactly the type that was read with it
+        if ((word & (2L << shift)) != 0) {
+            customCount.decrement();
+            return CUSTOM;
+        }
+        standardCount.decrement();
+        return STANDARD;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order); wait-free
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        if (key <= 0) {
+            return PlateCodec.NONE;
+        }
+        
+        int from = Math.min(key, PlateCodec.UNIVERSE) - 1;
+        int w = from >>> 5;
+        
+        // Keep only the plates at or below 'from' in its own word
+        long present = words.get(w) & PRESENT_BITS & (-1L >>> (62 - ((from & 31) << 1)));
+        while (present == 0) {
+            if (--w < 0) {
+                return PlateCodec.NONE;
+            }
+            present = words.get(w) & PRESENT_BITS;
+        }
+        
+        return (w << 5) + ((63 - Long.numberOfLeadingZeros(present)) >>> 1);
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order); wait-free
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        if (key >= PlateCodec.UNIVERSE - 1) {
+            return PlateCodec.NONE;
+        }
+        
+        int from = Math.max(key + 1, 0);
+        int w = from >>> 5;
+        
+        // Keep only the plates at or above 'from' in its own word
+        long present = words.get(w) & PRESENT_BITS & (-1L << ((from & 31) << 1));
+        while (present == 0) {
+            if (++w == WORD_COUNT) {
+                return PlateCodec.NONE;
+            }
+            present = words.get(w) & PRESENT_BITS;
+        }
+        
+        return (w << 5) + (Long.numberOfTrailingZeros(present) >>> 1);
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return new int[0];
+        }
+        
+        // Words may change between passes, so collect in one pass and trim
+        int[] result = new int[16];
+        int next = 0;
+        for (int w = lo >>> 5; w <= hi >>> 5; w++) {
+            long present = maskedWord(w, lo, hi) & PRESENT_BITS;
+            while (present != 0) {
+                if (next == result.length) {
+                    result = Arrays.copyOf(result, next * 2);
+                }
+                result[next++] = (w << 5) + (Long.numberOfTrailingZeros(present) >>> 1);
+                present &= present - 1; // Clear lowest plate
+            }
+        }
+        return Arrays.copyOf(result, next);
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor; wait-free
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return;
+        }
+        
+        for (int w = lo >>> 5; w <= hi >>> 5; w++) {
+            long word = maskedWord(w, lo, hi);
+            long present = word & PRESENT_BITS;
+            while (present != 0) {
+                int bit = Long.numberOfTrailingZeros(present);
+                visitor.visit((w << 5) + (bit >>> 1), (word & (2L << bit)) != 0);
+                present &= present - 1; // Clear lowest plate
+            }
+        }
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive); wait-free
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of registered plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return 0;
+        }
+        
+        int count = 0;
+        for (int w = lo >>> 5; w <= hi >>> 5; w++) {
+            count += Long.bitCount(maskedWord(w, lo, hi) & PRESENT_BITS);
+        }
+        return count;
+    }
+    
+    /**
+     * Reads word w once and clears the bit pairs of plates outside [lo, hi]
+     */
+    private long maskedWord(int w, int lo, int hi) {
+        long word = words.get(w);
+        if (w == lo >>> 5) {
+            word &= -1L << ((lo & 31) << 1);
+        }
+        if (w == hi >>> 5) {
+            word &= -1L >>> (62 - ((hi & 31) << 1));
+        }
+        return word;
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-threaded stress check for the thread-safe engines
+ * Churn phase: every thread inserts and removes random plates in a shared range and
+ * keeps its own net count of standard and customized plates; once all threads are
+ * done, the sums must match size, count, countCustom and a full range scan
+ * Probe phase: anchor plates (every 8th key) stay registered while writer threads
+ * churn the four keys just below each anchor, and reader threads check that
+ * search finds every anchor, successor and predecessor stay on the right side of
+ * their key, and range/count over [anchor, anchor + 3] see exactly the anchor.
+ * Any failure is counted, reported, and makes the run exit with status 1
+ * Usage: java ConcurrentStress [threads] [opsPerThread] [engine ...]
+ */
+public class ConcurrentStress {
+    private static final int CHURN_KEYS = 1 << 16; // Plates the churn phase draws from
+    private static final int ANCHORS = 256; // Anchor plates in the probe phase
+    
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int ops = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        String[] engines = {"concurrent-bitmap", "skiplist", "stamped"};
+        if (args.length > 2) {
+            engines = new String[args.length - 2];
+            System.arraycopy(args, 2, engines, 0, engines.length);
+        }
+        
+        long failures = 0;
+        for (String engine : engines) {
+            long churn = churn(PlateIndex.forName(engine), threads, ops);
+            long probe = probe(PlateIndex.forName(engine), threads, ops);
+            System.out.printf("%-18s churn failures: %d  probe failures: %d%n", engine, churn, probe);
+            failures += churn + probe;
+        }
+        if (failures != 0) {
+            System.exit(1);
+        }
+    }
+    
+    /**
+     * Churn phase; returns the number of counters that disagree with the threads' net counts
+     */
+    private static long churn(final PlateIndex index, int threads, final int ops) throws InterruptedException {
+        final long[] standard = new long[threads];
+        final long[] custom = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(id);
+                    for (int i = 0; i < ops; i++) {
+                        int key = random.nextInt(CHURN_KEYS);
+                        if (random.nextBoolean()) {
+                            boolean isCustom = random.nextBoolean();
+                            if (index.insert(key, isCustom)) {
+                                if (isCustom) {
+                                    custom[id]++;
+                                } else {
+                                    standard[id]++;
+                                }
+                            }
+                        } else {
+                            int type = index.remove(key);
+                            if (type == PlateIndex.CUSTOM) {
+                                custom[id]--;
+                            } else if (type == PlateIndex.STANDARD) {
+                                standard[id]--;
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        runAll(workers);
+        
+        long expectedCustom = 0;
+        long expectedTotal = 0;
+        for (int t = 0; t < threads; t++) {
+            expectedCustom += custom[t];
+            expectedTotal += standard[t] + custom[t];
+        }
+        
+        final long[] scanned = new long[2]; // Plates and customized plates seen by a full scan
+        index.range(0, CHURN_KEYS - 1, new PlateVisitor() {
+            @Override
+            public void visit(int key, boolean isCustom) {
+                scanned[0]++;
+                if (isCustom) {
+                    scanned[1]++;
+                }
+            }
+        });
+        
+        long failures = 0;
+        failures += check("size", index.size(), expectedTotal);
+        failures += check("count", index.count(0, CHURN_KEYS - 1), expectedTotal);
+        failures += check("countCustom", index.countCustom(0, CHURN_KEYS - 1), expectedCustom);
+        failures += check("range", scanned[0], expectedTotal);
+        failures += check("range (custom)", scanned[1], expectedCustom);
+        return failures;
+    }
+    
+    /**
+     * Probe phase; returns the number of reads that returned an impossible answer
+     */
+    private static long probe(final PlateIndex index, int threads, final int ops) throws InterruptedException {
+        for (int a = 1; a <= ANCHORS; a++) {
+            index.insert(a * 8, false);
+        }
+        
+        final AtomicLong failures = new AtomicLong();
+        final int writers = Math.max(threads / 2, 1);
+        Thread[] workers = new Thread[Math.max(threads, 2)];
+        for (int t = 0; t < workers.length; t++) {
+            final int id = t;
+            final boolean writer = t < writers;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(id);
+                    for (int i = 0; i < ops; i++) {
+                        int anchor = (1 + random.nextInt(ANCHORS)) * 8;
+                        if (writer) {
+                            // Only ever the four keys just below an anchor
+                            int key = anchor - 1 - random.nextInt(4);
+                            if (random.nextBoolean()) {
+                                index.insert(key, false);
+                            } else {
+                                index.remove(key);
+                            }
+                            continue;
+                        }
+                        
+                        int key = anchor - random.nextInt(8);
+                        int successor = index.successor(key);
+                        int predecessor = index.predecessor(key);
+                        if (!index.search(anchor)
+                                || (successor != PlateCodec.NONE && successor <= key)
+                                || (predecessor != PlateCodec.NONE && predecessor >= key)
+                                || index.count(anchor, anchor + 3) != 1) {
+                            failures.incrementAndGet();
+                        }
+                        
+                        final int lo = anchor;
+                        final int[] seen = new int[1];
+                        index.range(lo, lo + 3, new PlateVisitor() {
+                            @Override
+                            public void visit(int plate, boolean isCustom) {
+                                seen[0]++;
+                                if (plate != lo) {
+                                    failures.incrementAndGet();
+                                }
+                            }
+                        });
+                        if (seen[0] != 1) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        runAll(workers);
+        return failures.get();
+    }
+    
+    /**
+     * Reports a mismatch; returns 1 if actual differs from expected, else 0
+     */
+    private static long check(String what, long actual, long expected) {
+        if (actual == expected) {
+            return 0;
+        }
+        System.out.println("  " + what + " is " + actual + ", expected " + expected);
+        return 1;
+    }
+    
+    /**
+     * Starts all threads and waits for them to finish
+     */
+    private static void runAll(Thread[] workers) throws InterruptedException {
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Early release of direct and mapped ByteBuffers, shared by OffHeapRBTree and
+ * MappedBitmapRegistry
+ * The JDK frees a direct buffer's memory (or unmaps a mapped one) only once the
+ * buffer is garbage collected; free() does it at once through the buffer's cleaner
+ */
+final class DirectMemory {
+    private static final AtomicBoolean warned = new AtomicBoolean(); // Set once a failure has been reported
+    
+    private DirectMemory() {
+    }
+    
+    /**
+     * Releases a direct buffer's memory now rather than when the buffer is collected
+     * (for a mapped buffer, unmaps it); the buffer must not be used afterwards
+     * Uses sun.misc.Unsafe.invokeCleaner on Java 9 and later and the buffer's own
+     * cleaner on Java 8, both through reflection so the class compiles on either.
+     * If neither works the memory is left for the garbage collector, and the first
+     * such failure is reported on System.err
+     * @param buffer Direct buffer to release
+     * @return true if the memory was released, false if it is left for the garbage collector
+     */
+    static boolean free(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (NoSuchMethodException e) {
+            // Java 8: no invokeCleaner, fall through to DirectByteBuffer.cleaner()
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return failed(e);
+        }
+        
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner == null) {
+                return failed(new IllegalArgumentException("buffer has no cleaner"));
+            }
+            Method clean = cleaner.getClass().getMethod("clean");
+            clean.setAccessible(true);
+            clean.invoke(cleaner);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return failed(e);
+        }
+    }
+    
+    /**
+     * Reports the first failed release on System.err
+     * @return false
+     */
+    private static boolean failed(Exception e) {
+        if (warned.compareAndSet(false, true)) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e; // Unwrap InvocationTargetException
+            System.err.println("Warning: cannot release direct buffer memory early (" + cause
+                    + "); it is left for the garbage collector");
+        }
+        return false;
+    }
+}
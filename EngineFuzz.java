@@ -0,0 +1,261 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Single-threaded randomized check of the PlateIndex engines against a TreeMap
+ * Each engine gets the same random mix of insert, remove, batch insert/remove,
+ * occasional loadSorted, and queries (search, navigate, predecessor, successor,
+ * range, count, countCustom, rank, select) on keys clustered near both ends and
+ * the middle of the plate space, plus queries on keys outside it; every answer is
+ * compared with the TreeMap's
+ * The mapped engine runs on temporary registry files, deleted when the run ends
+ * Stops at the first mismatch and exits with status 1
+ * Usage: java EngineFuzz [ops] [engine ...]
+ */
+public class EngineFuzz {
+    private static final int WINDOW = 3000; // Width of each cluster of keys
+    private static final int[] OUTSIDE = {Integer.MIN_VALUE, -1, PlateCodec.UNIVERSE,
+            PlateCodec.UNIVERSE + 1, Integer.MAX_VALUE}; // Keys just past either end of the plate space
+    
+    public static void main(String[] args) {
+        int ops = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        String[] engines = {"rbtree", "array-rbtree", "bitmap", "concurrent-bitmap", "skiplist",
+                "stamped", "bplustree", "veb", "radix", "wavl", "offheap", "mapped"};
+        if (args.length > 1) {
+            engines = Arrays.copyOfRange(args, 1, args.length);
+        }
+        
+        for (String engine : engines) {
+            try {
+                run(engine, ops, new Random(engine.hashCode())).close();
+                System.out.printf("%-18s ok%n", engine);
+            } catch (IllegalStateException e) {
+                System.out.printf("%-18s FAILED: %s%n", engine, e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+    
+    /**
+     * Applies ops random operations to a new engine and a TreeMap, comparing every answer
+     * @return The engine in use at the end, which loadSorted may have replaced
+     */
+    private static PlateIndex run(String engine, int ops, Random random) {
+        PlateIndex index = open(engine);
+        TreeMap<Integer, Boolean> expected = new TreeMap<>();
+        PlateIndex.Navigation navigation = new PlateIndex.Navigation();
+        
+        for (int i = 0; i < ops; i++) {
+            int key = randomKey(random);
+            int op = random.nextInt(12);
+            if (op < 3) {
+                boolean custom = random.nextBoolean();
+                check(index.insert(key, custom) == !expected.containsKey(key), "insert", key);
+                if (!expected.containsKey(key)) {
+                    expected.put(key, custom);
+                }
+            } else if (op < 5) {
+                Boolean custom = expected.remove(key);
+                int type = custom == null ? PlateIndex.NOT_FOUND : (custom ? PlateIndex.CUSTOM : PlateIndex.STANDARD);
+                check(index.remove(key) == type, "remove", key);
+            } else if (op == 5) {
+                index.navigate(key, navigation);
+                check(navigation.found == expected.containsKey(key), "navigate found", key);
+                check(navigation.prev == orNone(expected.lowerKey(key)), "navigate prev", key);
+                check(navigation.next == orNone(expected.higherKey(key)), "navigate next", key);
+                check(index.search(key) == expected.containsKey(key), "search", key);
+                check(index.predecessor(key) == orNone(expected.lowerKey(key)), "predecessor", key);
+                check(index.successor(key) == orNone(expected.higherKey(key)), "successor", key);
+            } else if (op == 6) {
+                int hi = Math.min(key + random.nextInt(WINDOW / 4), PlateCodec.UNIVERSE - 1);
+                Map<Integer, Boolean> slice = expected.subMap(key, true, hi, true);
+                final ArrayList<Integer> keys = new ArrayList<>();
+                final ArrayList<Boolean> types = new ArrayList<>();
+                index.range(key, hi, new PlateVisitor() {
+                    @Override
+                    public void visit(int plate, boolean custom) {
+                        keys.add(plate);
+                        types.add(custom);
+                    }
+                });
+                check(keys.equals(new ArrayList<>(slice.keySet())), "range plates", key);
+                check(types.equals(new ArrayList<>(slice.values())), "range types", key);
+                check(index.count(key, hi) == slice.size(), "count", key);
+                check(index.countCustom(key, hi) == countCustom(slice), "countCustom", key);
+            } else if (op == 7) {
+                check(index.rank(key) == expected.headMap(key).size(), "rank", key);
+                check(index.size() == expected.size(), "size", key);
+            } else if (op == 8) {
+                int k = random.nextInt(expected.size() + 2) - 1;
+                int plate = (k >= 0 && k < expected.size()) ? nth(expected, k) : PlateCodec.NONE;
+                check(index.select(k) == plate, "select", k);
+            } else if (op == 9) {
+                batch(index, expected, random, key);
+            } else if (op == 11) {
+                outside(index, expected, random);
+            } else if (op == 10 && random.nextInt(5000) == 0) {
+                // Start over from a sorted snapshot of part of the registry
+                TreeMap<Integer, Boolean> kept = new TreeMap<>(expected.headMap(key));
+                int[] keys = new int[kept.size()];
+                boolean[] custom = new boolean[kept.size()];
+                int n = 0;
+                for (Map.Entry<Integer, Boolean> entry : kept.entrySet()) {
+                    keys[n] = entry.getKey();
+                    custom[n++] = entry.getValue();
+                }
+                index.close();
+                index = open(engine);
+                index.loadSorted(keys, custom, n);
+                expected = kept;
+            }
+        }
+        
+        check(index.size() == expected.size(), "final size", expected.size());
+        check(index.count(0, PlateCodec.UNIVERSE - 1) == expected.size(), "final count", expected.size());
+        return index;
+    }
+    
+    /**
+     * Applies a sorted batch of inserts or removes around key
+     */
+    private static void batch(PlateIndex index, TreeMap<Integer, Boolean> expected, Random random, int key) {
+        int n = 1 + random.nextInt(32);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = Math.min(key + random.nextInt(64), PlateCodec.UNIVERSE - 1);
+        }
+        Arrays.sort(keys);
+        
+        if (random.nextBoolean()) {
+            boolean[] custom = new boolean[n];
+            boolean[] inserted = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                custom[i] = random.nextBoolean();
+            }
+            index.insertBatch(keys, custom, n, inserted);
+            for (int i = 0; i < n; i++) {
+                boolean absent = !expected.containsKey(keys[i]);
+                check(inserted[i] == absent, "insertBatch", keys[i]);
+                if (absent) {
+                    expected.put(keys[i], custom[i]);
+                }
+            }
+        } else {
+            int[] types = new int[n];
+            index.removeBatch(keys, n, types);
+            for (int i = 0; i < n; i++) {
+                Boolean custom = expected.remove(keys[i]);
+                int type = custom == null ? PlateIndex.NOT_FOUND : (custom ? PlateIndex.CUSTOM : PlateIndex.STANDARD);
+                check(types[i] == type, "removeBatch", keys[i]);
+            }
+        }
+    }
+    
+    /**
+     * Queries with keys and bounds outside the plate space, which every engine must
+     * answer as if the space were all there is
+     */
+    private static void outside(PlateIndex index, TreeMap<Integer, Boolean> expected, Random random) {
+        int key = OUTSIDE[random.nextInt(OUTSIDE.length)];
+        check(!index.search(key), "search outside", key);
+        check(index.remove(key) == PlateIndex.NOT_FOUND, "remove outside", key);
+        check(index.predecessor(key) == orNone(expected.lowerKey(key)), "predecessor outside", key);
+        check(index.successor(key) == orNone(expected.higherKey(key)), "successor outside", key);
+        check(index.rank(key) == expected.headMap(key).size(), "rank outside", key);
+        
+        int lo = key < 0 ? key : randomKey(random);
+        int hi = key < 0 ? randomKey(random) : key;
+        final int[] seen = new int[1];
+        index.range(lo, hi, new PlateVisitor() {
+            @Override
+            public void visit(int plate, boolean custom) {
+                seen[0]++;
+            }
+        });
+        Map<Integer, Boolean> slice = expected.subMap(lo, true, hi, true);
+        check(seen[0] == slice.size(), "range outside", key);
+        check(index.count(lo, hi) == slice.size(), "count outside", key);
+        check(index.countCustom(lo, hi) == countCustom(slice), "countCustom outside", key);
+    }
+    
+    /**
+     * A new empty engine, for the start of a run and for loadSorted (which some engines
+     * require empty); mapped gets a registry file of its own that does not exist yet
+     */
+    private static PlateIndex open(String engine) {
+        if (engine.equalsIgnoreCase("mapped")) {
+            try {
+                File file = File.createTempFile("enginefuzz", ".registry");
+                file.delete();
+                file.deleteOnExit();
+                System.setProperty("plate.registry", file.getPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return PlateIndex.forName(engine);
+    }
+    
+    /**
+     * Random key from one of three clusters: the bottom, middle or top of the plate space
+     */
+    private static int randomKey(Random random) {
+        int offset = random.nextInt(WINDOW);
+        switch (random.nextInt(3)) {
+            case 0:
+                return offset;
+            case 1:
+                return PlateCodec.UNIVERSE / 2 + offset;
+            default:
+                return PlateCodec.UNIVERSE - 1 - offset;
+        }
+    }
+    
+    /**
+     * Fails the run with a message naming the operation and key
+     */
+    private static void check(boolean ok, String what, int key) {
+        if (!ok) {
+            throw new IllegalStateException(what + " disagrees at " + key);
+        }
+    }
+    
+    /**
+     * A TreeMap neighbour as an engine would report it
+     */
+    private static int orNone(Integer key) {
+        return key == null ? PlateCodec.NONE : key;
+    }
+    
+    /**
+     * Customized plates in a slice of the expected registry
+     */
+    private static int countCustom(Map<Integer, Boolean> slice) {
+        int count = 0;
+        for (boolean custom : slice.values()) {
+            if (custom) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * The k-th smallest key of map (0-based), by walking it
+     */
+    private static int nth(TreeMap<Integer, Boolean> map, int k) {
+        int i = 0;
+        for (int key : map.keySet()) {
+            if (i++ == k) {
+                return key;
+            }
+        }
+        return PlateCodec.NONE;
+    }
+}
@@ -0,0 +1,400 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free skip list for the Flying Broomstick Management System
+ * An ordered index that is safe to share between threads without a global lock,
+ * for plate encodings too sparse for a direct-address bitmap: any int key other
+ * than Integer.MIN_VALUE and Integer.MAX_VALUE (the sentinels) may be stored
+ * Follows Herlihy and Shavit's lock-free skip list: a node is logically removed
+ * when its bottom-level link is marked, and traversals unlink marked nodes as they go
+ * insert and remove are lock-free; search, predecessor and successor never retry
+ * and are wait-free; range iteration is weakly consistent
+ * Offers the same operations as RBTree
+ */
+public class LockFreeSkipList implements PlateIndex {
+    private static final int MAX_LEVEL = 21; // Enough levels for the whole 36^4 plate space
+    
+    private final Node head = new Node(Integer.MIN_VALUE, false, MAX_LEVEL);
+    private final Node tail = new Node(Integer.MAX_VALUE, false, MAX_LEVEL);
+    private final LongAdder standardCount = new LongAdder(); // Registered standard plates
+    private final LongAdder customCount = new LongAdder(); // Registered customized plates
+    
+    /**
+     * Skip list node; the mark on next[i] means the node is removed from level i
+     */
+    private static final class Node {
+        final int key; // Packed license plate number
+        final boolean custom; // true for customized plates
+        final AtomicMarkableReference<Node>[] next;
+        final int topLevel;
+        
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node(int key, boolean custom, int topLevel) {
+            this.key = key;
+            this.custom = custom;
+            this.next = (AtomicMarkableReference<Node>[]) new AtomicMarkableReference[topLevel + 1];
+            this.topLevel = topLevel;
+        }
+    }
+    
+    /**
+     * Constructor for an empty skip list
+     */
+    public LockFreeSkipList() {
+        for (int i = 0; i <= MAX_LEVEL; i++) {
+            head.next[i] = new AtomicMarkableReference<Node>(tail, false);
+            tail.next[i] = new AtomicMarkableReference<Node>(null, false);
+        }
+    }
+    
+    /**
+     * Checks if the skip list is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * Number of registered plates (exact only when no update is in progress)
+     */
+    @Override
+    public int size() {
+        return (int) (standardCount.sum() + customCount.sum());
+    }
+    
+    /**
+     * Number of registered standard plates (exact only when no update is in progress)
+     */
+    public int standardCount() {
+        return (int) standardCount.sum();
+    }
+    
+    /**
+     * Number of registered customized plates (exact only when no update is in progress)
+     */
+    public int customCount() {
+        return (int) customCount.sum();
+    }
+    
+    /**
+     * Inserts a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Inserts a plate; lock-free
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        if (key == Integer.MIN_VALUE || key == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Key is reserved for a sentinel: " + key);
+        }
+        
+        int topLevel = randomLevel();
+        Node[] preds = new Node[MAX_LEVEL + 1];
+        Node[] succs = new Node[MAX_LEVEL + 1];
+        
+        while (true) {
+            if (find(key, preds, succs)) {
+                return false;
+            }
+            
+            Node node = new Node(key, custom, topLevel);
+            for (int level = 0; level <= topLevel; level++) {
+                node.next[level] = new AtomicMarkableReference<Node>(succs[level], false);
+            }
+            
+            // Linking the bottom level is what makes the plate visible
+            if (!preds[0].next[0].compareAndSet(succs[0], node, false, false)) {
+                continue;
+            }
+            (custom ? customCount : standardCount).increment();
+            
+            // The upper levels are only shortcuts; relink them until they stick
+            for (int level = 1; level <= topLevel; level++) {
+                while (true) {
+                    Node succ = node.next[level].getReference();
+                    if (node.next[level].isMarked()) {
+                        return true; // Already being removed
+                    }
+                    if (succ != succs[level] && !node.next[level].compareAndSet(succ, succs[level], false, false)) {
+                        continue;
+                    }
+                    if (preds[level].next[level].compareAndSet(succs[level], node, false, false)) {
+                        break;
+                    }
+                    find(key, preds, succs);
+                }
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Checks if a plate is registered; wait-free
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        Node curr = ceilingNode(key, true);
+        return curr != tail && curr.key == key;
+    }
+    
+    /**
+     * Removes a plate
+     * @param key Packed license plate number to remove
+     * @return true if removed successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Removes a plate and reports its type; lock-free
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        if (key == Integer.MIN_VALUE || key == Integer.MAX_VALUE) {
+            return NOT_FOUND; // Sentinels are never registered
+        }
+        
+        Node[] preds = new Node[MAX_LEVEL + 1];
+        Node[] succs = new Node[MAX_LEVEL + 1];
+        if (!find(key, preds, succs)) {
+            return NOT_FOUND;
+        }
+        
+        // Mark the upper levels top-down, then race for the bottom-level mark
+        Node node = succs[0];
+        boolean[] marked = {false};
+        for (int level = node.topLevel; level >= 1; level--) {
+            Node succ = node.next[level].get(marked);
+            while (!marked[0]) {
+                node.next[level].compareAndSet(succ, succ, false, true);
+                succ = node.next[level].get(marked);
+            }
+        }
+        
+        Node succ = node.next[0].get(marked);
+        while (true) {
+            if (marked[0]) {
+                return NOT_FOUND; // Another thread removed it first
+            }
+            if (node.next[0].compareAndSet(succ, succ, false, true)) {
+                find(key, preds, succs); // Unlink it physically
+                break;
+            }
+            succ = node.next[0].get(marked);
+        }
+        
+        if (node.custom) {
+            customCount.decrement();
+            return CUSTOM;
+        }
+        standardCount.decrement();
+        return STANDARD;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order); wait-free
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        Node pred = lowerNode(key);
+        return pred == head ? PlateCodec.NONE : pred.key;
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order); wait-free
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        Node succ = ceilingNode(key, false);
+        return succ == tail ? PlateCodec.NONE : succ.key;
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive); weakly consistent
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        if (lo > hi) {
+            return new int[0];
+        }
+        
+        int[] result = new int[16];
+        int next = 0;
+        for (Node curr = ceilingNode(lo, true); curr != tail && curr.key <= hi; curr = nextLive(curr)) {
+            if (next == result.length) {
+                result = Arrays.copyOf(result, next * 2);
+            }
+            result[next++] = curr.key;
+        }
+        return Arrays.copyOf(result, next);
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor; weakly consistent
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        if (lo > hi) {
+            return;
+        }
+        
+        for (Node curr = ceilingNode(lo, true); curr != tail && curr.key <= hi; curr = nextLive(curr)) {
+            visitor.visit(curr.key, curr.custom);
+        }
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive), in O(log n + k); weakly consistent
+     */
+    @Override
+    public int count(int lo, int hi) {
+        int count = 0;
+        if (lo <= hi) {
+            for (Node curr = ceilingNode(lo, true); curr != tail && curr.key <= hi; curr = nextLive(curr)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Locates the window around key on every level, unlinking marked nodes on the way
+     * @return true if an unmarked node with the key is linked at the bottom level
+     */
+    private boolean find(int key, Node[] preds, Node[] succs) {
+        boolean[] marked = {false};
+        
+        retry:
+        while (true) {
+            Node pred = head;
+            for (int level = MAX_LEVEL; level >= 0; level--) {
+                Node curr = pred.next[level].getReference();
+                while (true) {
+                    Node succ = curr.next[level].get(marked);
+                    while (marked[0]) {
+                        // curr is removed from this level; snip it out or start over
+                        if (!pred.next[level].compareAndSet(curr, succ, false, false)) {
+                            continue retry;
+                        }
+                        curr = succ;
+                        succ = curr.next[level].get(marked);
+                    }
+                    if (curr.key < key) {
+                        pred = curr;
+                        curr = succ;
+                    } else {
+                        break;
+                    }
+                }
+                preds[level] = pred;
+                succs[level] = curr;
+            }
+            return succs[0].key == key;
+        }
+    }
+    
+    /**
+     * Last unmarked bottom-level node with a key less than key, or head; never writes
+     */
+    private Node lowerNode(int key) {
+        return descend(key, false);
+    }
+    
+    /**
+     * First unmarked bottom-level node with a key at or above (inclusive) or
+     * strictly above key, or tail; never writes
+     */
+    private Node ceilingNode(int key, boolean inclusive) {
+        if (!inclusive) {
+            if (key == Integer.MAX_VALUE) {
+                return tail;
+            }
+            key++;
+        }
+        return descend(key, true);
+    }
+    
+    /**
+     * Descends to the bottom level, skipping marked nodes; never writes
+     * The ceiling is the node the descent itself found unmarked after the last lower
+     * node. Re-reading that node's link instead could return a node inserted behind
+     * it in the meantime, with a key below the one asked for
+     * @return The first unmarked node with a key at or above key (or tail) if ceiling
+     *         is true, otherwise the last one with a key below key (or head)
+     */
+    private Node descend(int key, boolean ceiling) {
+        boolean[] marked = {false};
+        Node pred = head;
+        Node curr = null;
+        for (int level = MAX_LEVEL; level >= 0; level--) {
+            curr = pred.next[level].getReference();
+            while (true) {
+                Node succ = curr.next[level].get(marked);
+                while (marked[0]) {
+                    curr = succ;
+                    succ = curr.next[level].get(marked);
+                }
+                if (curr.key < key) {
+                    pred = curr;
+                    curr = succ;
+                } else {
+                    break;
+                }
+            }
+        }
+        return ceiling ? curr : pred;
+    }
+    
+    /**
+     * First unmarked bottom-level node after node, or tail
+     * Only used to step from a node already in range: links only ever lead to larger keys
+     */
+    private Node nextLive(Node node) {
+        boolean[] marked = {false};
+        Node curr = node.next[0].getReference();
+        while (curr != tail) {
+            curr.next[0].get(marked);
+            if (!marked[0]) {
+                break;
+            }
+            curr = curr.next[0].getReference();
+        }
+        return curr;
+    }
+    
+    /**
+     * Geometric level with p = 1/2, capped at MAX_LEVEL
+     */
+    private static int randomLevel() {
+        return Math.min(Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << 30)), MAX_LEVEL);
+    }
+}
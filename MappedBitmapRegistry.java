@@ -0,0 +1,655 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * Persistent bitmap registry for the Flying Broomstick Management System
+ * The same layout as BitmapRegistry (registered and customized bit planes plus a
+ * Fenwick tree over per-word popcounts), but kept in a memory-mapped file instead
+ * of heap arrays. Every update writes straight into the mapping, so reopening the
+ * file later finds the registry as it was left: startup maps the file and reads a
+ * header, independent of how many plates are registered
+ * The header records whether the last session closed cleanly. It is marked open
+ * while the registry is in use and clean again by close(); a file still marked
+ * open (the process died or never closed it) is repaired on the next open by
+ * recounting the bit planes
+ * Dirty pages are written back by the operating system, by flush(), by close(),
+ * or after every setFlushInterval() updates
+ * Offers the same operations as RBTree
+ */
+public class MappedBitmapRegistry implements PlateIndex {
+    private static final int WORD_COUNT = (PlateCodec.UNIVERSE + 63) >>> 6;
+    
+    // File layout, in bytes
+    private static final long MAGIC = 0x504c415445524547L; // "PLATEREG"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC_AT = 0;
+    private static final int VERSION_AT = 8;
+    private static final int STATE_AT = 12; // STATE_CLEAN or STATE_OPEN
+    private static final int SIZE_AT = 16; // Registered plates, valid when clean
+    private static final int CUSTOM_SIZE_AT = 20; // Customized plates, valid when clean
+    private static final int UNIVERSE_AT = 24; // PlateCodec.UNIVERSE the file was made for
+    private static final int HEADER_BYTES = 64;
+    private static final int WORDS_AT = HEADER_BYTES; // Bit k is set if plate k is registered
+    private static final int CUSTOM_WORDS_AT = WORDS_AT + WORD_COUNT * 8; // Bit k is set if plate k is customized
+    private static final int FENWICK_AT = CUSTOM_WORDS_AT + WORD_COUNT * 8; // Fenwick tree over per-word popcounts (1-based)
+    private static final int FILE_BYTES = FENWICK_AT + (WORD_COUNT + 1) * 4;
+    
+    private static final int STATE_CLEAN = 1;
+    private static final int STATE_OPEN = 2;
+    
+    // Registry file used by PlateIndex.forName("mapped")
+    static final String DEFAULT_FILE = "plates.registry";
+    
+    private final String path;
+    private final RandomAccessFile file; // Held open for the lock
+    private FileLock lock; // Keeps other processes from mapping the same registry
+    private MappedByteBuffer data; // The whole file; null once closed
+    private final boolean cleanShutdown; // Whether the previous session closed the file
+    private int size = 0; // Number of registered plates
+    private int customSize = 0; // Number of customized plates
+    private int flushInterval = 0; // Updates between automatic flushes; 0 leaves write-back to the OS
+    private int unflushed = 0; // Updates since the last flush
+    
+    /**
+     * Opens a registry file, creating an empty registry if the file does not exist
+     * @param path Registry file path
+     * @throws IOException if the file cannot be opened or mapped, is in use by another
+     *         registry, or is not a registry file
+     */
+    public MappedBitmapRegistry(String path) throws IOException {
+        this.path = path;
+        file = new RandomAccessFile(path, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IOException("Registry file is in use: " + path);
+            }
+            
+            long length = channel.size();
+            if (length != 0 && length != FILE_BYTES) {
+                throw new IOException("Not a plate registry file: " + path);
+            }
+            data = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_BYTES);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            
+            if (length == 0) {
+                // New file: the mapping is zero-filled, which is an empty registry
+                data.putLong(MAGIC_AT, MAGIC);
+                data.putInt(VERSION_AT, FORMAT_VERSION);
+                data.putInt(UNIVERSE_AT, PlateCodec.UNIVERSE);
+                data.putInt(STATE_AT, STATE_CLEAN);
+            } else if (data.getLong(MAGIC_AT) != MAGIC || data.getInt(VERSION_AT) != FORMAT_VERSION
+                    || data.getInt(UNIVERSE_AT) != PlateCodec.UNIVERSE) {
+                throw new IOException("Not a plate registry file: " + path);
+            }
+            
+            cleanShutdown = data.getInt(STATE_AT) == STATE_CLEAN;
+            if (cleanShutdown) {
+                size = data.getInt(SIZE_AT);
+                customSize = data.getInt(CUSTOM_SIZE_AT);
+            } else {
+                recover();
+            }
+            
+            // Mark the file open before the first update can reach the disk
+            data.putInt(STATE_AT, STATE_OPEN);
+            data.force();
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Registry file path
+     */
+    public String path() {
+        return path;
+    }
+    
+    /**
+     * Whether the previous session closed the registry cleanly
+     * false means the file was found marked open and its counters were rebuilt
+     */
+    public boolean wasCleanShutdown() {
+        return cleanShutdown;
+    }
+    
+    /**
+     * Sets how often updates are forced to disk
+     * @param updates Flush after this many plates have been inserted or removed (calls
+     *                that change nothing do not count, and a bulk load counts each
+     *                plate); 0 (the default) leaves dirty pages to the operating
+     *                system until flush() or close()
+     * @throws IllegalArgumentException if updates is negative
+     */
+    public void setFlushInterval(int updates) {
+        if (updates < 0) {
+            throw new IllegalArgumentException("Flush interval must not be negative: " + updates);
+        }
+        flushInterval = updates;
+    }
+    
+    /**
+     * Writes the counters to the header and forces all dirty pages to disk
+     * The file stays marked open; only close() marks it clean
+     */
+    public void flush() {
+        checkOpen();
+        data.putInt(SIZE_AT, size);
+        data.putInt(CUSTOM_SIZE_AT, customSize);
+        data.force();
+        unflushed = 0;
+    }
+    
+    /**
+     * Flushes, marks the file clean and unmaps it; later operations throw IllegalStateException
+     * Calling close() again has no effect
+     */
+    @Override
+    public void close() {
+        if (data == null) {
+            return;
+        }
+        
+        // Data first, then the clean marker, so a clean file never holds partial updates
+        flush();
+        data.putInt(STATE_AT, STATE_CLEAN);
+        data.force();
+        release();
+    }
+    
+    /**
+     * Checks if the registry is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        checkOpen();
+        return size == 0;
+    }
+    
+    /**
+     * Number of registered plates
+     */
+    @Override
+    public int size() {
+        checkOpen();
+        return size;
+    }
+    
+    /**
+     * Replaces the contents of the registry with plates given in ascending order
+     * @param keys Packed plates in strictly ascending order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @throws IllegalArgumentException if keys are not strictly ascending or not all
+     *                                  in [0, PlateCodec.UNIVERSE); the file is left untouched
+     */
+    @Override
+    public void loadSorted(int[] keys, boolean[] custom, int n) {
+        checkOpen();
+        for (int i = 1; i < n; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("Plates are not in strictly ascending order at index " + i);
+            }
+        }
+        if (n > 0) {
+            // Ascending, so the ends bound every key in between
+            PlateCodec.checkKey(keys[0]);
+            PlateCodec.checkKey(keys[n - 1]);
+        }
+        
+        for (int w = 0; w < WORD_COUNT; w++) {
+            setWord(w, 0);
+            setCustomWord(w, 0);
+        }
+        for (int i = 0; i < n; i++) {
+            int w = keys[i] >>> 6;
+            long bit = 1L << keys[i];
+            setWord(w, word(w) | bit);
+            if (custom != null && custom[i]) {
+                setCustomWord(w, customWord(w) | bit);
+            }
+        }
+        
+        recount();
+        afterUpdate(n);
+    }
+    
+    /**
+     * Registers a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Registers a plate
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        checkOpen();
+        PlateCodec.checkKey(key);
+        int w = key >>> 6;
+        long bit = 1L << key; // Shift distance is taken mod 64
+        long word = word(w);
+        if ((word & bit) != 0) {
+            return false;
+        }
+        
+        // Type bit before the registered bit, so a registered plate always has its type on disk
+        if (custom) {
+            setCustomWord(w, customWord(w) | bit);
+            customSize++;
+        }
+        setWord(w, word | bit);
+        size++;
+        updateCount(w, 1);
+        afterUpdate(1);
+        return true;
+    }
+    
+    /**
+     * Checks if a plate is registered
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        checkOpen();
+        return PlateCodec.isKey(key) && (word(key >>> 6) & (1L << key)) != 0;
+    }
+    
+    /**
+     * Removes a plate
+     * @param key Packed license plate number to remove
+     * @return true if removed successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Removes a plate and reports its type
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        checkOpen();
+        if (!PlateCodec.isKey(key)) {
+            return NOT_FOUND;
+        }
+        
+        int w = key >>> 6;
+        long bit = 1L << key;
+        long word = word(w);
+        if ((word & bit) == 0) {
+            return NOT_FOUND;
+        }
+        
+        long customWord = customWord(w);
+        int type = (customWord & bit) != 0 ? CUSTOM : STANDARD;
+        setWord(w, word & ~bit);
+        if (type == CUSTOM) {
+            setCustomWord(w, customWord & ~bit);
+            customSize--;
+        }
+        size--;
+        updateCount(w, -1);
+        afterUpdate(1);
+        return type;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        checkOpen();
+        if (key <= 0) {
+            return PlateCodec.NONE;
+        }
+        
+        int from = Math.min(key, PlateCodec.UNIVERSE) - 1;
+        int w = from >>> 6;
+        
+        // Keep only the bits at or below 'from' in its own word
+        long word = word(w) & (-1L >>> (63 - (from & 63)));
+        while (word == 0) {
+            if (--w < 0) {
+                return PlateCodec.NONE;
+            }
+            word = word(w);
+        }
+        
+        return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order)
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        checkOpen();
+        if (key >= PlateCodec.UNIVERSE - 1) {
+            return PlateCodec.NONE;
+        }
+        
+        int from = Math.max(key + 1, 0);
+        int w = from >>> 6;
+        
+        // Keep only the bits at or above 'from' in its own word
+        long word = word(w) & (-1L << from);
+        while (word == 0) {
+            if (++w == WORD_COUNT) {
+                return PlateCodec.NONE;
+            }
+            word = word(w);
+        }
+        
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        checkOpen();
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return new int[0];
+        }
+        
+        int[] result = new int[count(lo, hi)];
+        int next = 0;
+        for (int w = lo >>> 6; w <= hi >>> 6; w++) {
+            long word = maskedWord(word(w), w, lo, hi);
+            while (word != 0) {
+                result[next++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1; // Clear lowest set bit
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        checkOpen();
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return;
+        }
+        
+        for (int w = lo >>> 6; w <= hi >>> 6; w++) {
+            long word = maskedWord(word(w), w, lo, hi);
+            if (word == 0) {
+                continue;
+            }
+            long customWord = customWord(w);
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                visitor.visit((w << 6) + bit, (customWord & (1L << bit)) != 0);
+                word &= word - 1; // Clear lowest set bit
+            }
+        }
+    }
+    
+    /**
+     * Counts the plates that come before a key
+     * @param key Packed license plate number (need not be registered)
+     * @return Number of registered plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        checkOpen();
+        if (key <= 0) {
+            return 0;
+        }
+        if (key >= PlateCodec.UNIVERSE) {
+            return size;
+        }
+        
+        int w = key >>> 6;
+        return prefixCount(w) + Long.bitCount(word(w) & ((1L << key) - 1));
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        checkOpen();
+        if (k < 0 || k >= size) {
+            return PlateCodec.NONE;
+        }
+        
+        // Descend the Fenwick tree to the word holding the k-th plate
+        int w = 0;
+        int remaining = k;
+        for (int step = Integer.highestOneBit(WORD_COUNT); step != 0; step >>>= 1) {
+            int next = w + step;
+            if (next <= WORD_COUNT && fenwick(next) <= remaining) {
+                w = next;
+                remaining -= fenwick(next);
+            }
+        }
+        
+        // w is now the 0-based index of that word; drop its lower set bits
+        long word = word(w);
+        for (int i = 0; i < remaining; i++) {
+            word &= word - 1;
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of registered plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? size() : rank(hi + 1)) - rank(lo);
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive)
+     * The whole plate space is answered from the counter; other ranges scan the custom plane
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        checkOpen();
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo > hi) {
+            return 0;
+        }
+        if (lo == 0 && hi == PlateCodec.UNIVERSE - 1) {
+            return customSize;
+        }
+        
+        int count = 0;
+        for (int w = lo >>> 6; w <= hi >>> 6; w++) {
+            count += Long.bitCount(maskedWord(customWord(w), w, lo, hi));
+        }
+        return count;
+    }
+    
+    /**
+     * Rebuilds the counters of a file that was not closed cleanly
+     * A crash can leave a type bit without its registered bit; those are cleared
+     */
+    private void recover() {
+        for (int w = 0; w < WORD_COUNT; w++) {
+            long customWord = customWord(w);
+            long kept = customWord & word(w);
+            if (kept != customWord) {
+                setCustomWord(w, kept);
+            }
+        }
+        recount();
+    }
+    
+    /**
+     * Recomputes size, customSize and the Fenwick tree from the bit planes in O(WORD_COUNT)
+     */
+    private void recount() {
+        size = 0;
+        customSize = 0;
+        for (int w = 0; w < WORD_COUNT; w++) {
+            int count = Long.bitCount(word(w));
+            size += count;
+            customSize += Long.bitCount(customWord(w));
+            setFenwick(w + 1, count);
+        }
+        
+        // Linear Fenwick build: push each node's total into its parent
+        for (int i = 1; i <= WORD_COUNT; i++) {
+            int parent = i + (i & -i);
+            if (parent <= WORD_COUNT) {
+                setFenwick(parent, fenwick(parent) + fenwick(i));
+            }
+        }
+    }
+    
+    /**
+     * Counts updates towards the flush interval and flushes when it is reached
+     */
+    private void afterUpdate(int updates) {
+        if (flushInterval > 0) {
+            unflushed += updates;
+            if (unflushed >= flushInterval) {
+                flush();
+            }
+        }
+    }
+    
+    /**
+     * Unmaps the file and releases the lock, without touching the file contents
+     */
+    private void release() {
+        if (data != null) {
+            DirectMemory.free(data);
+            data = null;
+        }
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            file.close();
+        } catch (IOException e) {
+            // The mapping is already gone; nothing left to release
+        }
+        lock = null;
+    }
+    
+    /**
+     * Throws if the registry has been closed
+     */
+    private void checkOpen() {
+        if (data == null) {
+            throw new IllegalStateException("Registry is closed");
+        }
+    }
+    
+    /**
+     * Adds delta to the popcount of word w in the Fenwick tree
+     */
+    private void updateCount(int w, int delta) {
+        for (int i = w + 1; i <= WORD_COUNT; i += i & -i) {
+            setFenwick(i, fenwick(i) + delta);
+        }
+    }
+    
+    /**
+     * Number of plates in words [0, w)
+     */
+    private int prefixCount(int w) {
+        int count = 0;
+        for (int i = w; i > 0; i -= i & -i) {
+            count += fenwick(i);
+        }
+        return count;
+    }
+    
+    /**
+     * Returns word (the w-th word of a bit plane) with the bits outside [lo, hi] cleared
+     */
+    private static long maskedWord(long word, int w, int lo, int hi) {
+        if (w == lo >>> 6) {
+            word &= -1L << lo;
+        }
+        if (w == hi >>> 6) {
+            word &= -1L >>> (63 - (hi & 63));
+        }
+        return word;
+    }
+    
+    // Accessors for the mapped arrays
+    
+    private long word(int w) {
+        return data.getLong(WORDS_AT + (w << 3));
+    }
+    
+    private void setWord(int w, long word) {
+        data.putLong(WORDS_AT + (w << 3), word);
+    }
+    
+    private long customWord(int w) {
+        return data.getLong(CUSTOM_WORDS_AT + (w << 3));
+    }
+    
+    private void setCustomWord(int w, long word) {
+        data.putLong(CUSTOM_WORDS_AT + (w << 3), word);
+    }
+    
+    private int fenwick(int i) {
+        return data.getInt(FENWICK_AT + (i << 2));
+    }
+    
+    private void setFenwick(int i, int count) {
+        data.putInt(FENWICK_AT + (i << 2), count);
+    }
+}
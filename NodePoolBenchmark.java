@@ -0,0 +1,114 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Steady-state add/drop churn on RBTree with and without the node pool
+ * Preloads random plates, warms up with churn, then runs the same sequence of
+ * dropLicence/addLicence pairs and reports time per operation, nodes allocated and
+ * reused, bytes allocated by the benchmark thread (where the JVM can measure it)
+ * and garbage collections. With the pool on, the steady state must allocate no
+ * nodes at all; the benchmark fails if it does
+ * Usage: java NodePoolBenchmark [pairs] [size] [poolCapacity]
+ */
+public class NodePoolBenchmark {
+    public static void main(String[] args) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        int poolCapacity = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        size = Math.min(size, PlateCodec.UNIVERSE / 2);
+        
+        // Same plates and churn sequence for both runs
+        Random random = new Random(size);
+        boolean[] registered = new boolean[PlateCodec.UNIVERSE];
+        int[] live = new int[size];
+        for (int i = 0; i < size; i++) {
+            int key;
+            do {
+                key = random.nextInt(PlateCodec.UNIVERSE);
+            } while (registered[key]);
+            registered[key] = true;
+            live[i] = key;
+        }
+        int[] preload = live.clone();
+        
+        int[] drops = new int[pairs];
+        int[] adds = new int[pairs];
+        for (int i = 0; i < pairs; i++) {
+            int slot = random.nextInt(size);
+            drops[i] = live[slot];
+            registered[live[slot]] = false;
+            
+            int key;
+            do {
+                key = random.nextInt(PlateCodec.UNIVERSE);
+            } while (registered[key]);
+            registered[key] = true;
+            live[slot] = key;
+            adds[i] = key;
+        }
+        
+        System.out.println("pool      ns/op   allocated   reused   bytes/op   GCs");
+        for (int capacity : new int[] {0, poolCapacity}) {
+            RBTree tree = new RBTree();
+            tree.setNodePool(capacity);
+            for (int key : preload) {
+                tree.insert(key, false);
+            }
+            
+            // Warm up: the JIT compiles the churn loop and the pool fills from the first drops
+            churn(tree, drops, adds, 0, pairs / 2);
+            tree.resetCounters();
+            
+            long bytes = allocatedBytes();
+            long collections = collections();
+            long start = System.nanoTime();
+            churn(tree, drops, adds, pairs / 2, pairs);
+            long elapsed = System.nanoTime() - start;
+            collections = collections() - collections;
+            bytes = (bytes < 0) ? -1 : allocatedBytes() - bytes;
+            
+            int measured = pairs - pairs / 2;
+            System.out.printf("%4d  %9.1f  %10d  %7d  %9s  %4d%n", capacity,
+                    (double) elapsed / (2.0 * measured), tree.nodeAllocations(), tree.nodeReuses(),
+                    bytes < 0 ? "n/a" : String.format("%.2f", (double) bytes / (2.0 * measured)), collections);
+            
+            if (capacity > 0 && tree.nodeAllocations() != 0) {
+                throw new IllegalStateException("Pooled tree allocated " + tree.nodeAllocations() + " nodes in steady state");
+            }
+        }
+    }
+    
+    /**
+     * Applies drop/add pairs from..to-1
+     */
+    private static void churn(RBTree tree, int[] drops, int[] adds, int from, int to) {
+        for (int i = from; i < to; i++) {
+            tree.remove(drops[i]);
+            tree.insert(adds[i], false);
+        }
+    }
+    
+    /**
+     * Bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+    
+    /**
+     * Garbage collections so far, over all collectors
+     */
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(collector.getCollectionCount(), 0);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,956 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap Red-Black Tree for the Flying Broomstick Management System
+ * Nodes are fixed-size records in a direct ByteBuffer, so a registry of millions of
+ * plates costs the Java heap a handful of objects and adds nothing to GC pause times.
+ * A node is addressed by its byte offset in the buffer; child and parent links are
+ * offsets, and freed records are kept on a free-list and reused by later insertions
+ * close() releases the off-heap memory at once instead of waiting for the buffer to
+ * be garbage collected; the tree cannot be used afterwards
+ * Offers the same operations as RBTree
+ */
+public class OffHeapRBTree implements PlateIndex {
+    // Colors for Red-Black Tree nodes
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+    
+    // Offset used in place of a null node
+    private static final int NIL = -1;
+    
+    // Node record layout, in bytes
+    private static final int KEY = 0; // Packed license plate number
+    private static final int LEFT = 4; // Offset of the left child, or NIL; chains the free-list
+    private static final int RIGHT = 8; // Offset of the right child, or NIL
+    private static final int PARENT = 12; // Offset of the parent, or NIL
+    private static final int SIZE = 16; // Number of nodes in the subtree rooted here
+    private static final int CUSTOM_COUNT = 20; // Number of customized plates in the subtree
+    private static final int FLAGS = 24; // RED_FLAG and CUSTOM_FLAG bits
+    private static final int NODE_BYTES = 32; // Record size, padded to keep records aligned
+    
+    private static final int RED_FLAG = 1;
+    private static final int CUSTOM_FLAG = 2;
+    
+    private static final int INITIAL_CAPACITY = 1024; // Plates before the first growth
+    
+    private ByteBuffer nodes; // Node records; null once closed
+    private int root = NIL;
+    private int used = 0; // Bytes handed out so far (high-water mark)
+    private int freeHead = NIL; // First free record, chained through LEFT
+    
+    /**
+     * Constructor for an empty tree
+     */
+    public OffHeapRBTree() {
+        this(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Constructor for an empty tree with off-heap room for the given number of plates
+     */
+    public OffHeapRBTree(int initialCapacity) {
+        nodes = ByteBuffer.allocateDirect(Math.max(initialCapacity, 1) * NODE_BYTES).order(ByteOrder.nativeOrder());
+    }
+    
+    /**
+     * Checks if the tree is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        checkOpen();
+        return root == NIL;
+    }
+    
+    /**
+     * Returns the number of license plates in the tree
+     */
+    @Override
+    public int size() {
+        checkOpen();
+        return sizeOf(root);
+    }
+    
+    /**
+     * Off-heap bytes currently reserved for node records, or 0 once closed
+     */
+    public long offHeapBytes() {
+        return nodes == null ? 0 : nodes.capacity();
+    }
+    
+    /**
+     * Frees the off-heap memory now; later operations throw IllegalStateException
+     * Calling close() again has no effect
+     */
+    @Override
+    public void close() {
+        if (nodes != null) {
+            ByteBuffer buffer = nodes;
+            nodes = null;
+            root = NIL;
+            DirectMemory.free(buffer);
+        }
+    }
+    
+    /**
+     * Replaces the contents of the tree with plates given in ascending order
+     * Builds a balanced tree in O(n) with no rotations, coloring as RBTree.loadSorted does
+     * @param keys Packed plates in strictly ascending order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @throws IllegalArgumentException if keys are not strictly ascending
+     */
+    @Override
+    public void loadSorted(int[] keys, boolean[] custom, int n) {
+        checkOpen();
+        for (int i = 1; i < n; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("Plates are not in strictly ascending order at index " + i);
+            }
+        }
+        
+        // Start over with a buffer that fits exactly, so records are laid out in build order
+        ByteBuffer old = nodes;
+        nodes = ByteBuffer.allocateDirect(Math.max(n, 1) * NODE_BYTES).order(ByteOrder.nativeOrder());
+        DirectMemory.free(old);
+        used = 0;
+        freeHead = NIL;
+        
+        int redLevel = 0;
+        for (int m = n - 1; m >= 0; m = m / 2 - 1) {
+            redLevel++;
+        }
+        root = buildFromSorted(keys, custom, 0, n - 1, 0, redLevel);
+        if (root != NIL) {
+            setParent(root, NIL);
+        }
+    }
+    
+    /**
+     * Builds a balanced subtree from keys[lo..hi], coloring nodes at redLevel red
+     */
+    private int buildFromSorted(int[] keys, boolean[] custom, int lo, int hi, int depth, int redLevel) {
+        if (lo > hi) {
+            return NIL;
+        }
+        
+        int mid = (lo + hi) >>> 1;
+        int node = allocate(keys[mid], custom != null && custom[mid]);
+        setColor(node, depth == redLevel ? RED : BLACK);
+        
+        int left = buildFromSorted(keys, custom, lo, mid - 1, depth + 1, redLevel);
+        int right = buildFromSorted(keys, custom, mid + 1, hi, depth + 1, redLevel);
+        setLeft(node, left);
+        setRight(node, right);
+        if (left != NIL) {
+            setParent(left, node);
+        }
+        if (right != NIL) {
+            setParent(right, node);
+        }
+        
+        updateCounts(node);
+        return node;
+    }
+    
+    /**
+     * Inserts a new standard license plate into the tree
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Inserts a new license plate into the tree
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        checkOpen();
+        
+        // Find the parent of the new node, bailing out on duplicates
+        int current = root;
+        int p = NIL;
+        while (current != NIL) {
+            p = current;
+            int k = key(current);
+            if (key < k) {
+                current = left(current);
+            } else if (key > k) {
+                current = right(current);
+            } else {
+                return false;
+            }
+        }
+        
+        int node = allocate(key, custom);
+        setParent(node, p);
+        
+        if (p == NIL) {
+            root = node;
+        } else {
+            if (key < key(p)) {
+                setLeft(p, node);
+            } else {
+                setRight(p, node);
+            }
+            
+            // Every ancestor gains one node
+            int added = custom ? 1 : 0;
+            for (int a = p; a != NIL; a = parent(a)) {
+                nodes.putInt(a + SIZE, nodes.getInt(a + SIZE) + 1);
+                nodes.putInt(a + CUSTOM_COUNT, nodes.getInt(a + CUSTOM_COUNT) + added);
+            }
+        }
+        
+        fixAfterInsertion(node);
+        return true;
+    }
+    
+    /**
+     * Checks if a license plate exists in the tree
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        checkOpen();
+        return findNode(key) != NIL;
+    }
+    
+    /**
+     * Removes a license plate from the tree
+     * @param key Packed license plate number to remove
+     * @return true if removed successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Removes a license plate from the tree and reports its type
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND if it was not in the tree
+     */
+    @Override
+    public int remove(int key) {
+        checkOpen();
+        int node = findNode(key);
+        if (node == NIL) {
+            return NOT_FOUND;
+        }
+        
+        int type = isCustom(node) ? CUSTOM : STANDARD;
+        deleteNode(node);
+        return type;
+    }
+    
+    /**
+     * Internal method to delete a node and return its record to the free-list
+     */
+    private void deleteNode(int node) {
+        // Case 1: Node has two children
+        if (left(node) != NIL && right(node) != NIL) {
+            // Copy the successor's plate here and delete the successor instead
+            int successor = findMin(right(node));
+            
+            // node now holds the successor's plate, so it and its ancestors trade
+            // the deleted plate's type for the successor's
+            int delta = (isCustom(successor) ? 1 : 0) - (isCustom(node) ? 1 : 0);
+            for (int a = node; a != NIL; a = parent(a)) {
+                nodes.putInt(a + CUSTOM_COUNT, nodes.getInt(a + CUSTOM_COUNT) + delta);
+            }
+            
+            nodes.putInt(node + KEY, key(successor));
+            setCustom(node, isCustom(successor));
+            node = successor;
+        }
+        
+        // Every ancestor of the removed node loses one node; the removed node itself
+        // counts for nothing while fixAfterDeletion may still rotate around it
+        int removedCustom = isCustom(node) ? 1 : 0;
+        for (int a = parent(node); a != NIL; a = parent(a)) {
+            nodes.putInt(a + SIZE, nodes.getInt(a + SIZE) - 1);
+            nodes.putInt(a + CUSTOM_COUNT, nodes.getInt(a + CUSTOM_COUNT) - removedCustom);
+        }
+        nodes.putInt(node + SIZE, 0);
+        nodes.putInt(node + CUSTOM_COUNT, 0);
+        
+        // Case 2 & 3: Node has at most one child
+        int replacement = (left(node) != NIL) ? left(node) : right(node);
+        int p = parent(node);
+        
+        if (replacement != NIL) {
+            // Connect replacement to parent
+            setParent(replacement, p);
+            
+            if (p == NIL) {
+                root = replacement;
+            } else if (node == left(p)) {
+                setLeft(p, replacement);
+            } else {
+                setRight(p, replacement);
+            }
+            
+            // If we're removing a black node with a red child, make the child black
+            if (colorOf(node) == BLACK) {
+                if (colorOf(replacement) == RED) {
+                    setColor(replacement, BLACK);
+                } else {
+                    fixAfterDeletion(replacement);
+                }
+            }
+        } else if (p == NIL) {
+            // Case: No children and no parent (root)
+            root = NIL;
+        } else {
+            // Case: No children, but has parent
+            if (colorOf(node) == BLACK) {
+                fixAfterDeletion(node);
+            }
+            
+            // Remove node from parent (rotations may have moved it under a new one)
+            p = parent(node);
+            if (node == left(p)) {
+                setLeft(p, NIL);
+            } else {
+                setRight(p, NIL);
+            }
+        }
+        
+        release(node);
+    }
+    
+    /**
+     * Finds the record holding the given key
+     */
+    private int findNode(int key) {
+        int current = root;
+        
+        while (current != NIL) {
+            int k = key(current);
+            if (key < k) {
+                current = left(current);
+            } else if (key > k) {
+                current = right(current);
+            } else {
+                return current;
+            }
+        }
+        
+        return NIL;
+    }
+    
+    /**
+     * Finds the minimum node in a subtree
+     */
+    private int findMin(int node) {
+        for (int next = left(node); next != NIL; next = left(node)) {
+            node = next;
+        }
+        return node;
+    }
+    
+    /**
+     * Finds the maximum node in a subtree
+     */
+    private int findMax(int node) {
+        for (int next = right(node); next != NIL; next = right(node)) {
+            node = next;
+        }
+        return node;
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key in a single root-to-leaf walk
+     * @param key Packed license plate number (need not be in the tree)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
+     */
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        checkOpen();
+        int node = root;
+        int floor = NIL; // Last node we moved right from
+        int ceiling = NIL; // Last node we moved left from
+        
+        while (node != NIL && key(node) != key) {
+            if (key < key(node)) {
+                ceiling = node;
+                node = left(node);
+            } else {
+                floor = node;
+                node = right(node);
+            }
+        }
+        
+        result.found = node != NIL;
+        if (result.found) {
+            // The neighbours lie below the node when it has the matching subtree
+            if (left(node) != NIL) {
+                floor = findMax(left(node));
+            }
+            if (right(node) != NIL) {
+                ceiling = findMin(right(node));
+            }
+        }
+        
+        result.prev = floor != NIL ? key(floor) : PlateCodec.NONE;
+        result.next = ceiling != NIL ? key(ceiling) : PlateCodec.NONE;
+        return result;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        checkOpen();
+        int node = root;
+        int floor = NIL;
+        
+        while (node != NIL) {
+            if (key > key(node)) {
+                floor = node;
+                node = right(node);
+            } else {
+                node = left(node);
+            }
+        }
+        
+        return floor != NIL ? key(floor) : PlateCodec.NONE;
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order)
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        checkOpen();
+        int node = root;
+        int ceiling = NIL;
+        
+        while (node != NIL) {
+            if (key < key(node)) {
+                ceiling = node;
+                node = left(node);
+            } else {
+                node = right(node);
+            }
+        }
+        
+        return ceiling != NIL ? key(ceiling) : PlateCodec.NONE;
+    }
+    
+    /**
+     * Counts the plates that come before a key, using subtree sizes
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        checkOpen();
+        int rank = 0;
+        int node = root;
+        
+        while (node != NIL) {
+            if (key > key(node)) {
+                rank += sizeOf(left(node)) + 1;
+                node = right(node);
+            } else {
+                node = left(node);
+            }
+        }
+        
+        return rank;
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order, using subtree sizes
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        checkOpen();
+        if (k < 0 || k >= size()) {
+            return PlateCodec.NONE;
+        }
+        
+        int node = root;
+        while (true) {
+            int leftSize = sizeOf(left(node));
+            
+            if (k < leftSize) {
+                node = left(node);
+            } else if (k > leftSize) {
+                k -= leftSize + 1;
+                node = right(node);
+            } else {
+                return key(node);
+            }
+        }
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? size() : rank(hi + 1)) - rank(lo);
+    }
+    
+    /**
+     * Counts the customized plates that come before a key, using subtree counts
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of customized plates strictly less than key
+     */
+    public int customRank(int key) {
+        checkOpen();
+        int rank = 0;
+        int node = root;
+        
+        while (node != NIL) {
+            if (key > key(node)) {
+                rank += customCountOf(left(node)) + (isCustom(node) ? 1 : 0);
+                node = right(node);
+            } else {
+                node = left(node);
+            }
+        }
+        
+        return rank;
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? customCountOf(root) : customRank(hi + 1)) - customRank(lo);
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        final int[] result = new int[count(lo, hi)];
+        range(lo, hi, new PlateVisitor() {
+            private int next = 0;
+            
+            @Override
+            public void visit(int key, boolean custom) {
+                result[next++] = key;
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        checkOpen();
+        
+        // Find the first node with key >= lo
+        int node = root;
+        int first = NIL;
+        while (node != NIL) {
+            if (lo <= key(node)) {
+                first = node;
+                node = left(node);
+            } else {
+                node = right(node);
+            }
+        }
+        
+        for (node = first; node != NIL && key(node) <= hi; node = nextNode(node)) {
+            visitor.visit(key(node), isCustom(node));
+        }
+    }
+    
+    /**
+     * Finds the in-order successor of a node through parent links
+     */
+    private int nextNode(int node) {
+        if (right(node) != NIL) {
+            return findMin(right(node));
+        }
+        
+        int p = parent(node);
+        while (p != NIL && node == right(p)) {
+            node = p;
+            p = parent(p);
+        }
+        return p;
+    }
+    
+    /**
+     * Hands out a red record for a new key, reusing freed records first
+     */
+    private int allocate(int key, boolean custom) {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = left(node);
+        } else {
+            if (used == nodes.capacity()) {
+                grow();
+            }
+            node = used;
+            used += NODE_BYTES;
+        }
+        
+        nodes.putInt(node + KEY, key);
+        nodes.putInt(node + LEFT, NIL);
+        nodes.putInt(node + RIGHT, NIL);
+        nodes.putInt(node + PARENT, NIL);
+        nodes.putInt(node + SIZE, 1);
+        nodes.putInt(node + CUSTOM_COUNT, custom ? 1 : 0);
+        nodes.putInt(node + FLAGS, RED_FLAG | (custom ? CUSTOM_FLAG : 0));
+        return node;
+    }
+    
+    /**
+     * Pushes a record onto the free-list
+     */
+    private void release(int node) {
+        setLeft(node, freeHead);
+        setRight(node, NIL);
+        setParent(node, NIL);
+        freeHead = node;
+    }
+    
+    /**
+     * Doubles the buffer, copying the records over; offsets stay valid
+     * @throws IllegalStateException if the buffer cannot grow past 2 GB
+     */
+    private void grow() {
+        int capacity = nodes.capacity();
+        if (capacity > Integer.MAX_VALUE / 2) {
+            throw new IllegalStateException("Off-heap registry is full");
+        }
+        
+        ByteBuffer bigger = ByteBuffer.allocateDirect(capacity * 2).order(ByteOrder.nativeOrder());
+        ByteBuffer source = nodes.duplicate();
+        source.clear();
+        bigger.put(source);
+        bigger.clear();
+        
+        ByteBuffer old = nodes;
+        nodes = bigger;
+        DirectMemory.free(old);
+    }
+    
+    /**
+     * Fails fast once the off-heap memory has been released
+     */
+    private void checkOpen() {
+        if (nodes == null) {
+            throw new IllegalStateException("Registry is closed");
+        }
+    }
+    
+    /**
+     * Fixes Red-Black Tree properties after insertion
+     */
+    private void fixAfterInsertion(int node) {
+        setColor(node, RED);
+        
+        while (node != root && colorOf(parentOf(node)) == RED) {
+            int p = parentOf(node);
+            int grandparent = parentOf(p);
+            
+            if (p == leftOf(grandparent)) {
+                int uncle = rightOf(grandparent);
+                
+                if (colorOf(uncle) == RED) {
+                    // Case 1: Uncle is red
+                    setColor(p, BLACK);
+                    setColor(uncle, BLACK);
+                    setColor(grandparent, RED);
+                    node = grandparent;
+                } else {
+                    if (node == rightOf(p)) {
+                        // Case 2: Uncle is black, node is a right child
+                        node = p;
+                        rotateLeft(node);
+                    }
+                    
+                    // Case 3: Uncle is black, node is a left child
+                    setColor(parentOf(node), BLACK);
+                    setColor(parentOf(parentOf(node)), RED);
+                    rotateRight(parentOf(parentOf(node)));
+                }
+            } else {
+                int uncle = leftOf(grandparent);
+                
+                if (colorOf(uncle) == RED) {
+                    // Case 1: Uncle is red
+                    setColor(p, BLACK);
+                    setColor(uncle, BLACK);
+                    setColor(grandparent, RED);
+                    node = grandparent;
+                } else {
+                    if (node == leftOf(p)) {
+                        // Case 2: Uncle is black, node is a left child
+                        node = p;
+                        rotateRight(node);
+                    }
+                    
+                    // Case 3: Uncle is black, node is a right child
+                    setColor(parentOf(node), BLACK);
+                    setColor(parentOf(parentOf(node)), RED);
+                    rotateLeft(parentOf(parentOf(node)));
+                }
+            }
+        }
+        
+        // Ensure root is black
+        setColor(root, BLACK);
+    }
+    
+    /**
+     * Fixes Red-Black Tree properties after deletion
+     */
+    private void fixAfterDeletion(int x) {
+        while (x != root && colorOf(x) == BLACK) {
+            if (x == leftOf(parentOf(x))) {
+                int sibling = rightOf(parentOf(x));
+                
+                if (colorOf(sibling) == RED) {
+                    // Case 1: Sibling is red
+                    setColor(sibling, BLACK);
+                    setColor(parentOf(x), RED);
+                    rotateLeft(parentOf(x));
+                    sibling = rightOf(parentOf(x));
+                }
+                
+                if (colorOf(leftOf(sibling)) == BLACK && colorOf(rightOf(sibling)) == BLACK) {
+                    // Case 2: Sibling is black, both of sibling's children are black
+                    setColor(sibling, RED);
+                    x = parentOf(x);
+                } else {
+                    if (colorOf(rightOf(sibling)) == BLACK) {
+                        // Case 3: Sibling is black, left child is red, right child is black
+                        setColor(leftOf(sibling), BLACK);
+                        setColor(sibling, RED);
+                        rotateRight(sibling);
+                        sibling = rightOf(parentOf(x));
+                    }
+                    
+                    // Case 4: Sibling is black, right child is red
+                    setColor(sibling, colorOf(parentOf(x)));
+                    setColor(parentOf(x), BLACK);
+                    setColor(rightOf(sibling), BLACK);
+                    rotateLeft(parentOf(x));
+                    x = root; // End loop
+                }
+            } else {
+                int sibling = leftOf(parentOf(x));
+                
+                if (colorOf(sibling) == RED) {
+                    // Case 1: Sibling is red
+                    setColor(sibling, BLACK);
+                    setColor(parentOf(x), RED);
+                    rotateRight(parentOf(x));
+                    sibling = leftOf(parentOf(x));
+                }
+                
+                if (colorOf(rightOf(sibling)) == BLACK && colorOf(leftOf(sibling)) == BLACK) {
+                    // Case 2: Sibling is black, both of sibling's children are black
+                    setColor(sibling, RED);
+                    x = parentOf(x);
+                } else {
+                    if (colorOf(leftOf(sibling)) == BLACK) {
+                        // Case 3: Sibling is black, right child is red, left child is black
+                        setColor(rightOf(sibling), BLACK);
+                        setColor(sibling, RED);
+                        rotateLeft(sibling);
+                        sibling = leftOf(parentOf(x));
+                    }
+                    
+                    // Case 4: Sibling is black, left child is red
+                    setColor(sibling, colorOf(parentOf(x)));
+                    setColor(parentOf(x), BLACK);
+                    setColor(leftOf(sibling), BLACK);
+                    rotateRight(parentOf(x));
+                    x = root; // End loop
+                }
+            }
+        }
+        
+        // Ensure the fixed node is black
+        setColor(x, BLACK);
+    }
+    
+    /**
+     * Left rotate operation on record offsets
+     */
+    private void rotateLeft(int x) {
+        if (x == NIL) return;
+        
+        int y = right(x);
+        int yLeft = left(y);
+        setRight(x, yLeft);
+        if (yLeft != NIL) {
+            setParent(yLeft, x);
+        }
+        
+        int p = parent(x);
+        setParent(y, p);
+        if (p == NIL) {
+            root = y;
+        } else if (x == left(p)) {
+            setLeft(p, y);
+        } else {
+            setRight(p, y);
+        }
+        
+        setLeft(y, x);
+        setParent(x, y);
+        
+        updateCounts(x);
+        updateCounts(y);
+    }
+    
+    /**
+     * Right rotate operation on record offsets
+     */
+    private void rotateRight(int x) {
+        if (x == NIL) return;
+        
+        int y = left(x);
+        int yRight = right(y);
+        setLeft(x, yRight);
+        if (yRight != NIL) {
+            setParent(yRight, x);
+        }
+        
+        int p = parent(x);
+        setParent(y, p);
+        if (p == NIL) {
+            root = y;
+        } else if (x == right(p)) {
+            setRight(p, y);
+        } else {
+            setLeft(p, y);
+        }
+        
+        setRight(y, x);
+        setParent(x, y);
+        
+        updateCounts(x);
+        updateCounts(y);
+    }
+    
+    /**
+     * Record field accessors
+     */
+    private int key(int node) {
+        return nodes.getInt(node + KEY);
+    }
+    
+    private int left(int node) {
+        return nodes.getInt(node + LEFT);
+    }
+    
+    private int right(int node) {
+        return nodes.getInt(node + RIGHT);
+    }
+    
+    private int parent(int node) {
+        return nodes.getInt(node + PARENT);
+    }
+    
+    private void setLeft(int node, int child) {
+        nodes.putInt(node + LEFT, child);
+    }
+    
+    private void setRight(int node, int child) {
+        nodes.putInt(node + RIGHT, child);
+    }
+    
+    private void setParent(int node, int p) {
+        nodes.putInt(node + PARENT, p);
+    }
+    
+    private boolean isCustom(int node) {
+        return (nodes.getInt(node + FLAGS) & CUSTOM_FLAG) != 0;
+    }
+    
+    private void setCustom(int node, boolean custom) {
+        int flags = nodes.getInt(node + FLAGS);
+        nodes.putInt(node + FLAGS, custom ? flags | CUSTOM_FLAG : flags & ~CUSTOM_FLAG);
+    }
+    
+    private int sizeOf(int node) {
+        return node == NIL ? 0 : nodes.getInt(node + SIZE);
+    }
+    
+    private int customCountOf(int node) {
+        return node == NIL ? 0 : nodes.getInt(node + CUSTOM_COUNT);
+    }
+    
+    private void updateCounts(int node) {
+        int l = left(node);
+        int r = right(node);
+        nodes.putInt(node + SIZE, sizeOf(l) + sizeOf(r) + 1);
+        nodes.putInt(node + CUSTOM_COUNT, customCountOf(l) + customCountOf(r) + (isCustom(node) ? 1 : 0));
+    }
+    
+    /**
+     * Helper methods for accessing node properties with NIL checks
+     */
+    private boolean colorOf(int node) {
+        return node == NIL ? BLACK : (nodes.getInt(node + FLAGS) & RED_FLAG) != 0;
+    }
+    
+    private int parentOf(int node) {
+        return node == NIL ? NIL : parent(node);
+    }
+    
+    private int leftOf(int node) {
+        return node == NIL ? NIL : left(node);
+    }
+    
+    private int rightOf(int node) {
+        return node == NIL ? NIL : right(node);
+    }
+    
+    private void setColor(int node, boolean c) {
+        if (node != NIL) {
+            int flags = nodes.getInt(node + FLAGS);
+            nodes.putInt(node + FLAGS, c ? flags | RED_FLAG : flags & ~RED_FLAG);
+        }
+    }
+}
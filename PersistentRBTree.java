@@ -0,0 +1,361 @@
+import java.util.ArrayList;
+
+/**
+ * Persistent (path-copying) Red-Black Tree for the Flying Broomstick Management System
+ * Nodes are immutable: insert and delete copy only the O(log n) nodes on the search path
+ * and share every other subtree with the previous version. Snapshots record the current
+ * root, so any number of versions costs memory proportional to the number of changes
+ * Uses Okasaki's balancing for insertion and Kahrs' algorithm for deletion; RBTree's
+ * parent pointers and in-place fixups cannot be shared between versions
+ */
+public class PersistentRBTree {
+    // Colors for Red-Black Tree nodes
+    private static final boolean RED = true;
+    private static final boolean BLACK = false;
+    
+    private Node root; // Current (latest) version
+    private ArrayList<Node> versions = new ArrayList<>(); // Snapshot roots by version number
+    
+    /**
+     * Immutable node; subtree counts are fixed at construction
+     */
+    private static final class Node {
+        final int key; // Packed license plate number
+        final boolean custom; // true for customized plates
+        final boolean color; // RED or BLACK
+        final Node left, right;
+        final int size; // Number of nodes in the subtree rooted here
+        final int customCount; // Number of customized plates in the subtree rooted here
+        
+        Node(boolean color, Node left, int key, boolean custom, Node right) {
+            this.key = key;
+            this.custom = custom;
+            this.color = color;
+            this.left = left;
+            this.right = right;
+            this.size = sizeOf(left) + sizeOf(right) + 1;
+            this.customCount = customCountOf(left) + customCountOf(right) + (custom ? 1 : 0);
+        }
+        
+        /**
+         * Copy of this node with another color
+         */
+        Node withColor(boolean newColor) {
+            return newColor == color ? this : new Node(newColor, left, key, custom, right);
+        }
+    }
+    
+    /**
+     * Inserts a new license plate into the current version
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    public boolean insert(int key, boolean custom) {
+        if (search(root, key)) {
+            return false;
+        }
+        root = ins(root, key, custom).withColor(BLACK);
+        return true;
+    }
+    
+    /**
+     * Removes a license plate from the current version and reports its type
+     * @param key Packed license plate number to remove
+     * @return PlateIndex.CUSTOM or PlateIndex.STANDARD for the removed plate, or PlateIndex.NOT_FOUND
+     */
+    public int remove(int key) {
+        Node node = findNode(root, key);
+        if (node == null) {
+            return PlateIndex.NOT_FOUND;
+        }
+        
+        Node result = del(root, key);
+        root = (result == null) ? null : result.withColor(BLACK);
+        return node.custom ? PlateIndex.CUSTOM : PlateIndex.STANDARD;
+    }
+    
+    /**
+     * Replaces the current version with plates given in strictly ascending order, in O(n)
+     * @param keys Packed plates in strictly ascending order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     */
+    public void loadSorted(int[] keys, boolean[] custom, int n) {
+        int redLevel = 0;
+        for (int m = n - 1; m >= 0; m = m / 2 - 1) {
+            redLevel++;
+        }
+        root = build(keys, custom, 0, n - 1, 0, redLevel);
+    }
+    
+    /**
+     * Records the current tree as a new version
+     * @return Number of the new version (versions are numbered from 0)
+     */
+    public int snapshot() {
+        versions.add(root);
+        return versions.size() - 1;
+    }
+    
+    /**
+     * Number of versions recorded so far
+     */
+    public int versionCount() {
+        return versions.size();
+    }
+    
+    /**
+     * Checks if a license plate exists in the current version
+     */
+    public boolean search(int key) {
+        return search(root, key);
+    }
+    
+    /**
+     * Checks if a license plate existed in a recorded version, in O(log n)
+     * @param key Packed license plate number
+     * @param version Version number from snapshot()
+     * @throws IndexOutOfBoundsException if the version was never recorded
+     */
+    public boolean searchAt(int key, int version) {
+        return search(versions.get(version), key);
+    }
+    
+    /**
+     * Counts the plates of a recorded version in a range (inclusive), in O(log n)
+     * @throws IndexOutOfBoundsException if the version was never recorded
+     */
+    public int countAt(int lo, int hi, int version) {
+        if (lo > hi) {
+            return 0;
+        }
+        Node versionRoot = versions.get(version);
+        return (hi == Integer.MAX_VALUE ? sizeOf(versionRoot) : rank(versionRoot, hi + 1)) - rank(versionRoot, lo);
+    }
+    
+    /**
+     * Streams the plates of a recorded version in a range (inclusive) to a visitor, in O(log n + k)
+     * @throws IndexOutOfBoundsException if the version was never recorded
+     */
+    public void rangeAt(int lo, int hi, int version, PlateVisitor visitor) {
+        rangeSearch(versions.get(version), lo, hi, visitor);
+    }
+    
+    /**
+     * Insertion with Okasaki's balancing; copies the search path only
+     */
+    private static Node ins(Node node, int key, boolean custom) {
+        if (node == null) {
+            return new Node(RED, null, key, custom, null);
+        }
+        
+        if (key < node.key) {
+            Node left = ins(node.left, key, custom);
+            return node.color == BLACK
+                    ? balance(left, node.key, node.custom, node.right)
+                    : new Node(RED, left, node.key, node.custom, node.right);
+        } else {
+            Node right = ins(node.right, key, custom);
+            return node.color == BLACK
+                    ? balance(node.left, node.key, node.custom, right)
+                    : new Node(RED, node.left, node.key, node.custom, right);
+        }
+    }
+    
+    /**
+     * Kahrs' deletion; the key must be present
+     */
+    private static Node del(Node node, int key) {
+        if (key < node.key) {
+            Node left = del(node.left, key);
+            return isBlack(node.left)
+                    ? balanceLeft(left, node.key, node.custom, node.right)
+                    : new Node(RED, left, node.key, node.custom, node.right);
+        } else if (key > node.key) {
+            Node right = del(node.right, key);
+            return isBlack(node.right)
+                    ? balanceRight(node.left, node.key, node.custom, right)
+                    : new Node(RED, node.left, node.key, node.custom, right);
+        } else {
+            return append(node.left, node.right);
+        }
+    }
+    
+    /**
+     * Builds a black node from its parts, resolving a red-red violation in either child
+     */
+    private static Node balance(Node a, int key, boolean custom, Node b) {
+        if (isRed(a) && isRed(b)) {
+            return new Node(RED, a.withColor(BLACK), key, custom, b.withColor(BLACK));
+        }
+        if (isRed(a)) {
+            if (isRed(a.left)) {
+                return new Node(RED, a.left.withColor(BLACK), a.key, a.custom,
+                        new Node(BLACK, a.right, key, custom, b));
+            }
+            if (isRed(a.right)) {
+                return new Node(RED, new Node(BLACK, a.left, a.key, a.custom, a.right.left),
+                        a.right.key, a.right.custom, new Node(BLACK, a.right.right, key, custom, b));
+            }
+        }
+        if (isRed(b)) {
+            if (isRed(b.right)) {
+                return new Node(RED, new Node(BLACK, a, key, custom, b.left),
+                        b.key, b.custom, b.right.withColor(BLACK));
+            }
+            if (isRed(b.left)) {
+                return new Node(RED, new Node(BLACK, a, key, custom, b.left.left),
+                        b.left.key, b.left.custom, new Node(BLACK, b.left.right, b.key, b.custom, b.right));
+            }
+        }
+        return new Node(BLACK, a, key, custom, b);
+    }
+    
+    /**
+     * Rebalances after the left subtree lost one unit of black height
+     */
+    private static Node balanceLeft(Node left, int key, boolean custom, Node right) {
+        if (isRed(left)) {
+            return new Node(RED, left.withColor(BLACK), key, custom, right);
+        }
+        if (isBlack(right)) {
+            return balance(left, key, custom, right.withColor(RED));
+        }
+        // right is red with a black left child
+        Node rl = right.left;
+        return new Node(RED, new Node(BLACK, left, key, custom, rl.left), rl.key, rl.custom,
+                balance(rl.right, right.key, right.custom, right.right.withColor(RED)));
+    }
+    
+    /**
+     * Rebalances after the right subtree lost one unit of black height
+     */
+    private static Node balanceRight(Node left, int key, boolean custom, Node right) {
+        if (isRed(right)) {
+            return new Node(RED, left, key, custom, right.withColor(BLACK));
+        }
+        if (isBlack(left)) {
+            return balance(left.withColor(RED), key, custom, right);
+        }
+        // left is red with a black right child
+        Node lr = left.right;
+        return new Node(RED, balance(left.left.withColor(RED), left.key, left.custom, lr.left),
+                lr.key, lr.custom, new Node(BLACK, lr.right, key, custom, right));
+    }
+    
+    /**
+     * Joins the two subtrees of a deleted node
+     */
+    private static Node append(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        
+        if (isRed(left) && isRed(right)) {
+            Node middle = append(left.right, right.left);
+            if (isRed(middle)) {
+                return new Node(RED, new Node(RED, left.left, left.key, left.custom, middle.left),
+                        middle.key, middle.custom, new Node(RED, middle.right, right.key, right.custom, right.right));
+            }
+            return new Node(RED, left.left, left.key, left.custom,
+                    new Node(RED, middle, right.key, right.custom, right.right));
+        }
+        if (isBlack(left) && isBlack(right)) {
+            Node middle = append(left.right, right.left);
+            if (isRed(middle)) {
+                return new Node(RED, new Node(BLACK, left.left, left.key, left.custom, middle.left),
+                        middle.key, middle.custom, new Node(BLACK, middle.right, right.key, right.custom, right.right));
+            }
+            return balanceLeft(left.left, left.key, left.custom,
+                    new Node(BLACK, middle, right.key, right.custom, right.right));
+        }
+        if (isRed(right)) {
+            return new Node(RED, append(left, right.left), right.key, right.custom, right.right);
+        }
+        return new Node(RED, left.left, left.key, left.custom, append(left.right, right));
+    }
+    
+    /**
+     * Builds a balanced subtree from keys[lo..hi], coloring nodes at redLevel red
+     */
+    private static Node build(int[] keys, boolean[] custom, int lo, int hi, int depth, int redLevel) {
+        if (lo > hi) {
+            return null;
+        }
+        
+        int mid = (lo + hi) >>> 1;
+        Node left = build(keys, custom, lo, mid - 1, depth + 1, redLevel);
+        Node right = build(keys, custom, mid + 1, hi, depth + 1, redLevel);
+        return new Node(depth == redLevel ? RED : BLACK, left, keys[mid], custom != null && custom[mid], right);
+    }
+    
+    private static boolean search(Node node, int key) {
+        return findNode(node, key) != null;
+    }
+    
+    private static Node findNode(Node node, int key) {
+        while (node != null) {
+            if (key < node.key) {
+                node = node.left;
+            } else if (key > node.key) {
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Number of plates strictly less than key in a subtree
+     */
+    private static int rank(Node node, int key) {
+        int rank = 0;
+        while (node != null) {
+            if (key > node.key) {
+                rank += sizeOf(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+    
+    private static void rangeSearch(Node node, int lo, int hi, PlateVisitor visitor) {
+        if (node == null) return;
+        
+        if (lo < node.key) {
+            rangeSearch(node.left, lo, hi, visitor);
+        }
+        if (lo <= node.key && hi >= node.key) {
+            visitor.visit(node.key, node.custom);
+        }
+        if (hi > node.key) {
+            rangeSearch(node.right, lo, hi, visitor);
+        }
+    }
+    
+    /**
+     * Helper methods for accessing node properties with null checks
+     */
+    private static boolean isRed(Node node) {
+        return node != null && node.color == RED;
+    }
+    
+    private static boolean isBlack(Node node) {
+        return node != null && node.color == BLACK;
+    }
+    
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+    
+    private static int customCountOf(Node node) {
+        return node == null ? 0 : node.customCount;
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.PrintWriter;
+
+/**
+ * Packed integer encoding for license plates
+ * A plate is read as a 4-digit base-36 number over CHARS, so the numeric order
+ * of the packed keys is exactly the lexicographic order of the plates
+ */
+public class PlateCodec {
+    public static final String CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ"; // Valid characters
+    public static final int PLATE_LENGTH = 4; // Length of license plate
+    public static final int RADIX = 36; // Number of valid characters
+    public static final int UNIVERSE = RADIX * RADIX * RADIX * RADIX; // 36^4 possible plates
+    public static final int NONE = -1; // Marker for "no plate" results
+    
+    private PlateCodec() {
+    }
+    
+    /**
+     * Checks if a key lies in the packed plate space [0, UNIVERSE)
+     */
+    public static boolean isKey(int key) {
+        return key >= 0 && key < UNIVERSE;
+    }
+    
+    /**
+     * Rejects keys outside [0, UNIVERSE), for engines addressed directly by key
+     * @throws IllegalArgumentException if the key is out of range
+     */
+    public static void checkKey(int key) {
+        if (!isKey(key)) {
+            throw new IllegalArgumentException("Packed plate key out of range: " + key);
+        }
+    }
+    
+    /**
+     * Converts a plate to its packed key
+     * @param plate License plate number
+     * @return Packed key in [0, UNIVERSE), or NONE if the plate is not valid
+     */
+    public static int encode(String plate) {
+        if (plate == null || plate.length() != PLATE_LENGTH) {
+            return NONE;
+        }
+        
+        int key = 0;
+        for (int i = 0; i < PLATE_LENGTH; i++) {
+            int digit = digitOf(plate.charAt(i));
+            if (digit < 0) {
+                return NONE;
+            }
+            key = key * RADIX + digit;
+        }
+        return key;
+    }
+    
+    /**
+     * Converts a packed key back to its plate
+     * @param key Packed key in [0, UNIVERSE)
+     * @return License plate number
+     */
+    public static String decode(int key) {
+        char[] plate = new char[PLATE_LENGTH];
+        for (int i = PLATE_LENGTH - 1; i >= 0; i--) {
+            plate[i] = CHARS.charAt(key % RADIX);
+            key /= RADIX;
+        }
+        return new String(plate);
+    }
+    
+    /**
+     * Writes the plate for a packed key without creating an intermediate String
+     */
+    public static void writeTo(PrintWriter out, int key) {
+        int divisor = RADIX * RADIX * RADIX;
+        for (int i = 0; i < PLATE_LENGTH; i++) {
+            out.print(CHARS.charAt((key / divisor) % RADIX));
+            divisor /= RADIX;
+        }
+    }
+    
+    /**
+     * Maps a plate character to its base-36 digit, or -1 if it is not valid
+     */
+    private static int digitOf(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
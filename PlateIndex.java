@@ -0,0 +1,279 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Plate index engine behind plateMgmt
+ * Every engine stores packed plates (see PlateCodec) together with their type,
+ * and answers the lookups plateMgmt needs. Engines only have to provide the
+ * core operations; the rest have default implementations built on them, which
+ * engines override where their structure answers faster
+ * Keys are packed plates in [0, PlateCodec.UNIVERSE). Queries accept any int and
+ * answer as if nothing outside that domain is registered (range bounds are clamped
+ * to it); engines addressed directly by key reject inserts outside it with
+ * IllegalArgumentException
+ * RBTree is the default engine; forName() maps engine names to implementations
+ * Engines holding resources outside the Java heap release them in close()
+ */
+public interface PlateIndex extends Closeable {
+    // Results of remove(): the type of the removed plate, or NOT_FOUND
+    int NOT_FOUND = -1;
+    int STANDARD = 0;
+    int CUSTOM = 1;
+    
+    // Engine used when none is requested
+    String DEFAULT_ENGINE = "rbtree";
+    
+    /**
+     * Result of navigate(): whether a plate exists and its neighbouring plates
+     */
+    class Navigation {
+        public boolean found; // true if the plate itself is registered
+        public int prev; // Largest plate strictly less than the key, or PlateCodec.NONE
+        public int next; // Smallest plate strictly greater than the key, or PlateCodec.NONE
+    }
+    
+    /**
+     * Inserts a plate
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    boolean insert(int key, boolean custom);
+    
+    /**
+     * Deletes a plate and reports its type
+     * @param key Packed license plate number to delete
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    int remove(int key);
+    
+    /**
+     * Checks if a plate exists
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    boolean search(int key);
+    
+    /**
+     * Finds the largest plate strictly below key
+     * @param key Packed license plate number (need not be registered)
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    int predecessor(int key);
+    
+    /**
+     * Finds the smallest plate strictly above key
+     * @param key Packed license plate number (need not be registered)
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    int successor(int key);
+    
+    /**
+     * Streams all plates in a given range (inclusive) to a visitor
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    void range(int lo, int hi, PlateVisitor visitor);
+    
+    /**
+     * Number of registered plates
+     */
+    int size();
+    
+    /**
+     * Checks if the index is empty
+     */
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * Inserts a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    default boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Deletes a plate
+     * @param key Packed license plate number to delete
+     * @return true if deleted successfully, false if not found
+     */
+    default boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key
+     * @param key Packed license plate number (need not be registered)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
+     */
+    default Navigation navigate(int key, Navigation result) {
+        result.found = search(key);
+        result.prev = predecessor(key);
+        result.next = successor(key);
+        return result;
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of registered plates in [lo, hi]
+     */
+    default int count(int lo, int hi) {
+        final int[] count = new int[1];
+        range(lo, hi, new PlateVisitor() {
+            @Override
+            public void visit(int key, boolean custom) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    default int countCustom(int lo, int hi) {
+        final int[] count = new int[1];
+        range(lo, hi, new PlateVisitor() {
+            @Override
+            public void visit(int key, boolean custom) {
+                if (custom) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+    
+    /**
+     * Number of registered plates strictly below key
+     * @param key Packed license plate number (need not be registered)
+     */
+    default int rank(int key) {
+        return key <= 0 ? 0 : count(0, key - 1);
+    }
+    
+    /**
+     * Finds the k-th smallest plate (0-based) by walking successors
+     * @param k Position of the plate in ascending order
+     * @return Packed plate, or PlateCodec.NONE if k is out of range
+     */
+    default int select(int k) {
+        if (k < 0 || k >= size()) {
+            return PlateCodec.NONE;
+        }
+        
+        int key = successor(-1);
+        for (int i = 0; i < k; i++) {
+            key = successor(key);
+        }
+        return key;
+    }
+    
+    /**
+     * Loads plates given in ascending order into an empty index
+     * @param keys Packed plates in strictly ascending order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @throws IllegalArgumentException if keys are not strictly ascending
+     */
+    default void loadSorted(int[] keys, boolean[] custom, int n) {
+        for (int i = 1; i < n; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("Plates are not in strictly ascending order at index " + i);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            insert(keys[i], custom != null && custom[i]);
+        }
+    }
+    
+    /**
+     * Inserts a batch of plates given in ascending order (repeats allowed)
+     * @param keys Packed plates in non-decreasing order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @param inserted Receives true for each plate that was inserted, false if it already existed
+     */
+    default void insertBatch(int[] keys, boolean[] custom, int n, boolean[] inserted) {
+        for (int i = 0; i < n; i++) {
+            inserted[i] = insert(keys[i], custom != null && custom[i]);
+        }
+    }
+    
+    /**
+     * Removes a batch of plates given in ascending order (repeats allowed)
+     * @param keys Packed plates in non-decreasing order
+     * @param n Number of plates to take from keys
+     * @param types Receives CUSTOM or STANDARD for each removed plate, or NOT_FOUND
+     */
+    default void removeBatch(int[] keys, int n, int[] types) {
+        for (int i = 0; i < n; i++) {
+            types[i] = remove(keys[i]);
+        }
+    }
+    
+    /**
+     * Releases resources held outside the Java heap; on-heap engines have none
+     */
+    @Override
+    default void close() {
+    }
+    
+    /**
+     * Creates an engine by name
+     * Every engine starts empty except mapped, which opens the registry file named by
+     * the plate.registry system property (plates.registry by default) as it was left
+     * @param name One of rbtree, array-rbtree, bitmap, concurrent-bitmap, skiplist,
+     *             stamped, bplustree, veb, radix, wavl, offheap or mapped (case-insensitive)
+     * @return New engine
+     * @throws IllegalArgumentException if the name is unknown
+     * @throws UncheckedIOException if the mapped registry file cannot be opened
+     */
+    static PlateIndex forName(String name) {
+        switch (name.toLowerCase()) {
+            case "rbtree":
+                return new RBTree();
+            case "array-rbtree":
+                return new ArrayRBTree();
+            case "bitmap":
+                return new BitmapRegistry();
+            case "concurrent-bitmap":
+                return new ConcurrentBitmapRegistry();
+            case "skiplist":
+                return new LockFreeSkipList();
+            case "stamped":
+                return new StampedRegistry();
+            case "bplustree":
+                return new BPlusTree();
+            case "veb":
+                return new VEBTree();
+            case "radix":
+                return new RadixTrie();
+            case "wavl":
+                return new WAVLTree();
+            case "offheap":
+                return new OffHeapRBTree();
+            case "mapped":
+                String path = System.getProperty("plate.registry", MappedBitmapRegistry.DEFAULT_FILE);
+                try {
+                    return new MappedBitmapRegistry(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+    }
+}
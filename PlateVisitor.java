@@ -0,0 +1,12 @@
+/**
+ * Receives the plates of a range query one at a time, in ascending order
+ * Lets callers stream results straight to their output instead of collecting them first
+ */
+public interface PlateVisitor {
+    /**
+     * Called once per plate in the range
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     */
+    void visit(int key, boolean custom);
+}
@@ -1,26 +1,62 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 /**
  * Red-Black Tree Implementation for the Flying Broomstick Management System
  * This implementation doesn't use any built-in library structures
+ * Keys are plates packed into ints by PlateCodec, so every comparison is a single int compare
+ * Deletes are structural by default; with a tombstone limit set (see setTombstoneLimit) a delete
+ * only marks its node, and the tree is rebuilt in one linear pass once too many nodes are marked
+ * An optional bounded pool (see setNodePool) recycles the nodes of deleted plates for later
+ * inserts, so steady add/drop churn allocates no nodes
  */
-public class RBTree {
+public class RBTree implements PlateIndex {
     // Colors for Red-Black Tree nodes
     private static final boolean RED = true;
     private static final boolean BLACK = false;
     
+    // Red-Black height is at most 2 log2(n + 1), so no single root-to-leaf walk over
+    // int-sized trees is longer. The lookup walks (search, navigate, predecessor, successor,
+    // rank, customRank, select) are capped at this length so that optimistic readers
+    // racing a writer (see StampedRegistry) always finish
+    private static final int MAX_DEPTH = 64;
+    
     // Root node of the tree
     private Node root;
     
+    // Work done by rebalancing since construction or the last resetCounters()
+    private long rotations = 0; // Single rotations
+    private long rebalanceSteps = 0; // Iterations of the insert and delete fix-up loops
+    
+    // Deferred deletes: fraction of nodes that may be tombstones before a rebuild, 0 to delete at once
+    private double tombstoneLimit = 0;
+    private int tombstones = 0; // Nodes still linked into the tree whose plate was deleted
+    
+    // Node pool: nodes freed by deletes, chained through left, reused by inserts
+    private Node poolHead = null;
+    private int pooled = 0; // Nodes on the pool list
+    private int poolCapacity = 0; // Most nodes the pool keeps; 0 disables pooling
+    private long allocations = 0; // Nodes created with new since construction or the last resetCounters()
+    private long reuses = 0; // Nodes taken from the pool since construction or the last resetCounters()
+    
     /**
      * Node class for the Red-Black Tree
      */
-    private class Node {
-        String key; // License plate number
+    private static class Node {
+        int key; // Packed license plate number (see PlateCodec)
         boolean color; // RED or BLACK
+        boolean custom; // true for customized plates, false for standard ones
+        boolean deleted; // Tombstone: kept for the tree's shape, but no longer a registered plate
+        int size; // Number of registered plates in the subtree rooted here (tombstones excluded)
+        int customCount; // Number of customized plates in the subtree rooted here
         Node left, right, parent;
         
-        Node(String key, boolean color) {
+        Node(int key, boolean color, boolean custom) {
             this.key = key;
             this.color = color;
+            this.custom = custom;
+            this.size = 1;
+            this.customCount = custom ? 1 : 0;
             this.left = null;
             this.right = null;
             this.parent = null;
@@ -37,50 +73,298 @@ public class RBTree {
     /**
      * Checks if the tree is empty
      */
+    @Override
     public boolean isEmpty() {
-        return root == null;
+        return sizeOf(root) == 0;
+    }
+    
+    /**
+     * Number of rotations since construction or the last resetCounters()
+     */
+    public long rotations() {
+        return rotations;
+    }
+    
+    /**
+     * Number of fix-up steps (recolorings and rotation cases) since construction or the last resetCounters()
+     */
+    public long rebalanceSteps() {
+        return rebalanceSteps;
+    }
+    
+    /**
+     * Number of nodes created with new since construction or the last resetCounters()
+     */
+    public long nodeAllocations() {
+        return allocations;
+    }
+    
+    /**
+     * Number of nodes taken from the pool since construction or the last resetCounters()
+     */
+    public long nodeReuses() {
+        return reuses;
+    }
+    
+    /**
+     * Zeroes the rotation, rebalance and node allocation counters
+     */
+    public void resetCounters() {
+        rotations = 0;
+        rebalanceSteps = 0;
+        allocations = 0;
+        reuses = 0;
+    }
+    
+    /**
+     * Sets how many freed nodes the tree keeps for reuse
+     * With a capacity above 0, nodes of deleted plates go onto a free list instead of to the
+     * garbage collector, and inserts take nodes from it before allocating new ones
+     * @param capacity Most nodes to keep; 0 (the default) disables pooling and drops pooled nodes
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public void setNodePool(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Node pool capacity must not be negative: " + capacity);
+        }
+        
+        poolCapacity = capacity;
+        while (pooled > capacity) {
+            poolHead = poolHead.left;
+            pooled--;
+        }
+    }
+    
+    /**
+     * Number of nodes waiting in the pool
+     */
+    public int pooledNodes() {
+        return pooled;
+    }
+    
+    /**
+     * Hands out a node for a new plate, from the pool if it has one
+     */
+    private Node newNode(int key, boolean color, boolean custom) {
+        Node node = poolHead;
+        if (node == null) {
+            allocations++;
+            return new Node(key, color, custom);
+        }
+        
+        poolHead = node.left;
+        pooled--;
+        reuses++;
+        
+        node.key = key;
+        node.color = color;
+        node.custom = custom;
+        node.deleted = false;
+        node.size = 1;
+        node.customCount = custom ? 1 : 0;
+        node.left = null;
+        return node;
+    }
+    
+    /**
+     * Returns a node that has left the tree to the pool, unless the pool is full
+     */
+    private void release(Node node) {
+        if (pooled >= poolCapacity) {
+            return;
+        }
+        
+        node.left = poolHead;
+        node.right = null;
+        node.parent = null;
+        poolHead = node;
+        pooled++;
+    }
+    
+    /**
+     * Returns every node of a detached subtree to the pool, while it has room
+     */
+    private void releaseAll(Node node) {
+        if (node == null || pooled >= poolCapacity) {
+            return;
+        }
+        
+        Node left = node.left;
+        Node right = node.right;
+        release(node);
+        releaseAll(left);
+        releaseAll(right);
+    }
+    
+    /**
+     * Switches between structural and deferred deletes
+     * With a limit above 0, delete and remove only mark the plate's node as a tombstone and
+     * update the counts on its path, in O(log n). Lookups skip tombstones, and once they make
+     * up more than the given fraction of all nodes the tree is rebuilt without them
+     * @param fraction Share of nodes that may be tombstones, in [0, 1); 0 (the default)
+     *                 deletes structurally and rebuilds away any existing tombstones
+     * @throws IllegalArgumentException if fraction is outside [0, 1)
+     */
+    public void setTombstoneLimit(double fraction) {
+        if (!(fraction >= 0 && fraction < 1)) {
+            throw new IllegalArgumentException("Tombstone fraction must be in [0, 1): " + fraction);
+        }
+        
+        tombstoneLimit = fraction;
+        if (fraction == 0) {
+            compact();
+        }
+    }
+    
+    /**
+     * Number of tombstones currently in the tree
+     */
+    public int tombstones() {
+        return tombstones;
+    }
+    
+    /**
+     * Rebuilds the tree without its tombstones in one linear pass: the registered plates
+     * are read off in order and bulk-built into a balanced tree by loadSorted
+     */
+    public void compact() {
+        if (tombstones == 0) {
+            return;
+        }
+        
+        final int n = size();
+        final int[] keys = new int[n];
+        final boolean[] custom = new boolean[n];
+        range(Integer.MIN_VALUE, Integer.MAX_VALUE, new PlateVisitor() {
+            private int next = 0;
+            
+            @Override
+            public void visit(int key, boolean isCustom) {
+                keys[next] = key;
+                custom[next++] = isCustom;
+            }
+        });
+        loadSorted(keys, custom, n);
+    }
+    
+    /**
+     * Replaces the contents of the tree with plates given in ascending order
+     * Builds a perfectly balanced tree in O(n) with no comparisons against existing
+     * nodes and no rotations: every level is black except the deepest, incomplete one
+     * @param keys Packed plates in strictly ascending order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @throws IllegalArgumentException if keys are not strictly ascending
+     */
+    @Override
+    public void loadSorted(int[] keys, boolean[] custom, int n) {
+        for (int i = 1; i < n; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("Plates are not in strictly ascending order at index " + i);
+            }
+        }
+        
+        // The old nodes are dropped; recycle them for the new tree if pooling is on
+        releaseAll(root);
+        root = buildFromSorted(keys, custom, 0, n - 1, 0, redLevel(n));
+        if (root != null) {
+            root.parent = null;
+        }
+        tombstones = 0;
+    }
+    
+    /**
+     * Builds a balanced subtree from keys[lo..hi], coloring nodes at redLevel red
+     */
+    private Node buildFromSorted(int[] keys, boolean[] custom, int lo, int hi, int depth, int redLevel) {
+        if (lo > hi) {
+            return null;
+        }
+        
+        int mid = (lo + hi) >>> 1;
+        Node node = newNode(keys[mid], depth == redLevel ? RED : BLACK, custom != null && custom[mid]);
+        
+        node.left = buildFromSorted(keys, custom, lo, mid - 1, depth + 1, redLevel);
+        node.right = buildFromSorted(keys, custom, mid + 1, hi, depth + 1, redLevel);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+        
+        updateCounts(node);
+        return node;
+    }
+    
+    /**
+     * Depth at which a balanced tree of n nodes is incomplete (n nodes fill every level
+     * above it); only nodes on that level are colored red so all paths keep the same black height
+     */
+    private static int redLevel(int n) {
+        int level = 0;
+        for (int m = n - 1; m >= 0; m = m / 2 - 1) {
+            level++;
+        }
+        return level;
+    }
+    
+    /**
+     * Inserts a new standard license plate into the Red-Black Tree
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
     }
     
     /**
      * Inserts a new license plate into the Red-Black Tree
-     * @param key License plate number
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
      * @return true if inserted successfully, false if already exists
      */
-    public boolean insert(String key) {
-        // Check if the key already exists
-        if (search(key)) {
-            return false;
+    @Override
+    public boolean insert(int key, boolean custom) {
+        // Standard BST descent; finding the key on the way means it already exists
+        Node current = root;
+        Node parent = null;
+        
+        while (current != null) {
+            parent = current;
+            
+            if (key < current.key) {
+                current = current.left;
+            } else if (key > current.key) {
+                current = current.right;
+            } else if (current.deleted) {
+                revive(current, custom);
+                return true;
+            } else {
+                return false;
+            }
         }
         
         // Create new red node
-        Node node = new Node(key, RED);
+        Node node = newNode(key, RED, custom);
         
-        // Standard BST insert
-        if (root == null) {
+        if (parent == null) {
             root = node;
         } else {
-            Node current = root;
-            Node parent = null;
-            
-            while (current != null) {
-                parent = current;
-                int cmp = key.compareTo(current.key);
-                
-                if (cmp < 0) {
-                    current = current.left;
-                } else {
-                    current = current.right;
-                }
-            }
-            
             node.parent = parent;
             
-            int cmp = key.compareTo(parent.key);
-            if (cmp < 0) {
+            if (key < parent.key) {
                 parent.left = node;
             } else {
                 parent.right = node;
             }
+            
+            // Every ancestor gains one node
+            for (Node p = parent; p != null; p = p.parent) {
+                p.size++;
+                p.customCount += node.customCount;
+            }
         }
         
         // Fix Red-Black properties
@@ -91,21 +375,21 @@ public class RBTree {
     
     /**
      * Checks if a license plate exists in the tree
-     * @param key License plate number to search for
+     * @param key Packed license plate number to search for
      * @return true if found, false otherwise
      */
-    public boolean search(String key) {
+    @Override
+    public boolean search(int key) {
         Node node = root;
+        int steps = 0;
         
-        while (node != null) {
-            int cmp = key.compareTo(node.key);
-            
-            if (cmp < 0) {
+        while (node != null && steps++ < MAX_DEPTH) {
+            if (key < node.key) {
                 node = node.left;
-            } else if (cmp > 0) {
+            } else if (key > node.key) {
                 node = node.right;
             } else {
-                return true; // Found the key
+                return !node.deleted; // Found the key; a tombstone is not a registered plate
             }
         }
         
@@ -114,34 +398,100 @@ public class RBTree {
     
     /**
      * Removes a license plate from the tree
-     * @param key License plate number to remove
+     * @param key Packed license plate number to remove
      * @return true if removed successfully, false if not found
      */
-    public boolean delete(String key) {
-        // If the tree is empty or key doesn't exist
-        if (root == null || !search(key)) {
-            return false;
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Removes a license plate from the tree and reports its type
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND if it was not in the tree
+     */
+    @Override
+    public int remove(int key) {
+        Node node = findNode(key);
+        if (node == null || node.deleted) {
+            return NOT_FOUND;
         }
         
-        deleteNode(key);
-        return true;
+        int type = node.custom ? CUSTOM : STANDARD;
+        if (tombstoneLimit > 0) {
+            bury(node);
+        } else {
+            release(deleteNode(node));
+        }
+        return type;
     }
     
     /**
-     * Internal method to delete a node
+     * Turns a registered node into a tombstone, rebuilding the tree if tombstones
+     * now exceed the limit
      */
-    private void deleteNode(String key) {
-        Node node = findNode(key);
-        if (node == null) return;
+    private void bury(Node node) {
+        int removedCustom = node.custom ? 1 : 0;
+        for (Node p = node; p != null; p = p.parent) {
+            p.size--;
+            p.customCount -= removedCustom;
+        }
+        node.deleted = true;
+        tombstones++;
+        
+        if (tombstones > tombstoneLimit * (size() + tombstones)) {
+            compact();
+        }
+    }
+    
+    /**
+     * Registers a plate again on its tombstone node
+     */
+    private void revive(Node node, boolean custom) {
+        node.deleted = false;
+        node.custom = custom;
+        int addedCustom = custom ? 1 : 0;
+        for (Node p = node; p != null; p = p.parent) {
+            p.size++;
+            p.customCount += addedCustom;
+        }
+        tombstones--;
+    }
+    
+    /**
+     * Internal method to delete a node; only used while the tree holds no tombstones
+     * @return The node that was unlinked: node itself, or its successor whose plate moved into node
+     */
+    private Node deleteNode(Node node) {
         
         // Case 1: Node has two children
         if (node.left != null && node.right != null) {
             // Find the successor (smallest node in right subtree)
             Node successor = findMin(node.right);
+            
+            // node now holds the successor's plate, so it and its ancestors trade
+            // the deleted plate's type for the successor's
+            int delta = (successor.custom ? 1 : 0) - (node.custom ? 1 : 0);
+            for (Node p = node; p != null; p = p.parent) {
+                p.customCount += delta;
+            }
+            
             node.key = successor.key;
+            node.custom = successor.custom;
             node = successor; // Now delete the successor instead
         }
         
+        // Every ancestor of the removed node loses one node; the removed node itself
+        // counts for nothing while fixAfterDeletion may still rotate around it
+        int removedCustom = node.custom ? 1 : 0;
+        for (Node p = node.parent; p != null; p = p.parent) {
+            p.size--;
+            p.customCount -= removedCustom;
+        }
+        node.size = 0;
+        node.customCount = 0;
+        
         // Case 2 & 3: Node has at most one child
         Node replacement = (node.left != null) ? node.left : node.right;
         
@@ -183,20 +533,20 @@ public class RBTree {
                 node.parent.right = null;
             }
         }
+        
+        return node;
     }
     
     /**
      * Finds a node with the given key
      */
-    private Node findNode(String key) {
+    private Node findNode(int key) {
         Node current = root;
         
         while (current != null) {
-            int cmp = key.compareTo(current.key);
-            
-            if (cmp < 0) {
+            if (key < current.key) {
                 current = current.left;
-            } else if (cmp > 0) {
+            } else if (key > current.key) {
                 current = current.right;
             } else {
                 return current; // Found the node
@@ -207,107 +557,307 @@ public class RBTree {
     }
     
     /**
-     * Finds the minimum node in a subtree
+     * Finds the minimum node in a subtree, in at most MAX_DEPTH steps
      */
     private Node findMin(Node node) {
-        while (node.left != null) {
+        for (int steps = 0; node.left != null && steps < MAX_DEPTH; steps++) {
             node = node.left;
         }
         return node;
     }
     
     /**
-     * Finds the maximum node in a subtree
+     * Finds the maximum node in a subtree, in at most MAX_DEPTH steps
      */
     private Node findMax(Node node) {
-        while (node.right != null) {
+        for (int steps = 0; node.right != null && steps < MAX_DEPTH; steps++) {
             node = node.right;
         }
         return node;
     }
     
     /**
-     * Finds the predecessor (previous license plate in lexicographical order)
-     * @param key License plate number to find predecessor for
-     * @return Predecessor key, or null if no predecessor exists
+     * Finds existence, predecessor and successor of a key in a single root-to-leaf walk
+     * The descent and each walk down to a neighbour are capped at MAX_DEPTH steps apiece,
+     * so optimistic readers racing a writer (see StampedRegistry) always finish, with a
+     * result they then discard; on a valid tree no walk reaches the cap
+     * @param key Packed license plate number (need not be in the tree)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
      */
-    public String predecessor(String key) {
-        Node node = findNode(key);
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        if (tombstones > 0) {
+            // Neighbours may be tombstones; count past them instead
+            int below = rank(key);
+            result.found = search(key);
+            result.prev = (below == 0) ? PlateCodec.NONE : select(below - 1);
+            result.next = select(result.found ? below + 1 : below);
+            return result;
+        }
         
-        // If the key doesn't exist, find where it would be
-        if (node == null) {
-            node = findInsertionPoint(key);
-            if (node == null) return null;
-            
-            int cmp = key.compareTo(node.key);
-            if (cmp < 0) {
-                // Return the predecessor of the insertion point
-                Node pred = predecessor(node);
-                return pred != null ? pred.key : null;
+        Node node = root;
+        Node floor = null; // Last node we moved right from
+        Node ceiling = null; // Last node we moved left from
+        int steps = 0;
+        
+        while (node != null && node.key != key && steps++ < MAX_DEPTH) {
+            if (key < node.key) {
+                ceiling = node;
+                node = node.left;
             } else {
-                // The insertion point is the key itself, so return it
-                return node.key;
+                floor = node;
+                node = node.right;
             }
         }
         
-        // If left subtree exists, the predecessor is the rightmost node in left subtree
-        if (node.left != null) {
-            return findMax(node.left).key;
+        result.found = node != null && node.key == key;
+        if (result.found) {
+            // The neighbours lie below the node when it has the matching subtree
+            steps = 0;
+            for (Node n = node.left; n != null && steps++ < MAX_DEPTH; n = n.right) {
+                floor = n;
+            }
+            steps = 0;
+            for (Node n = node.right; n != null && steps++ < MAX_DEPTH; n = n.left) {
+                ceiling = n;
+            }
         }
         
-        // Otherwise, find the nearest ancestor where node is in the right subtree
-        Node parent = node.parent;
-        while (parent != null && node == parent.left) {
-            node = parent;
-            parent = parent.parent;
+        result.prev = floor != null ? floor.key : PlateCodec.NONE;
+        result.next = ceiling != null ? ceiling.key : PlateCodec.NONE;
+        return result;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        if (tombstones > 0) {
+            int below = rank(key);
+            return (below == 0) ? PlateCodec.NONE : select(below - 1);
+        }
+        
+        Node node = root;
+        Node floor = null;
+        int steps = 0;
+        
+        while (node != null && steps++ < MAX_DEPTH) {
+            if (key > node.key) {
+                floor = node;
+                node = node.right;
+            } else if (key < node.key) {
+                node = node.left;
+            } else {
+                // If left subtree exists, the predecessor is the rightmost node in left subtree
+                if (node.left != null) {
+                    floor = findMax(node.left);
+                }
+                break;
+            }
         }
         
-        return parent != null ? parent.key : null;
+        return floor != null ? floor.key : PlateCodec.NONE;
     }
     
     /**
      * Finds the successor (next license plate in lexicographical order)
-     * @param key License plate number to find successor for
-     * @return Successor key, or null if no successor exists
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
      */
-    public String successor(String key) {
-        Node node = findNode(key);
+    @Override
+    public int successor(int key) {
+        if (tombstones > 0) {
+            // rank(key + 1) counts the plates up to and including key
+            return (key == Integer.MAX_VALUE) ? PlateCodec.NONE : select(rank(key + 1));
+        }
         
-        // If the key doesn't exist, find where it would be
-        if (node == null) {
-            node = findInsertionPoint(key);
-            if (node == null) return null;
-            
-            int cmp = key.compareTo(node.key);
-            if (cmp > 0) {
-                // Return the successor of the insertion point
-                Node succ = successor(node);
-                return succ != null ? succ.key : null;
+        Node node = root;
+        Node ceiling = null;
+        int steps = 0;
+        
+        while (node != null && steps++ < MAX_DEPTH) {
+            if (key < node.key) {
+                ceiling = node;
+                node = node.left;
+            } else if (key > node.key) {
+                node = node.right;
+            } else {
+                // If right subtree exists, the successor is the leftmost node in right subtree
+                if (node.right != null) {
+                    ceiling = findMin(node.right);
+                }
+                break;
+            }
+        }
+        
+        return ceiling != null ? ceiling.key : PlateCodec.NONE;
+    }
+    
+    /**
+     * Returns the number of license plates in the tree
+     */
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+    
+    /**
+     * Counts the plates that come before a key, using subtree sizes
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        int rank = 0;
+        Node node = root;
+        int steps = 0;
+        
+        while (node != null && steps++ < MAX_DEPTH) {
+            if (key > node.key) {
+                // Everything in the left subtree and the node itself come before key
+                rank += sizeOf(node.left) + (node.deleted ? 0 : 1);
+                node = node.right;
             } else {
-                // The insertion point is the key itself, so return it
+                node = node.left;
+            }
+        }
+        
+        return rank;
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order, using subtree sizes
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        if (k < 0 || k >= size()) {
+            return PlateCodec.NONE;
+        }
+        
+        Node node = root;
+        for (int steps = 0; node != null && steps < MAX_DEPTH; steps++) {
+            int leftSize = sizeOf(node.left);
+            
+            if (k < leftSize) {
+                node = node.left;
+            } else if (k == leftSize && !node.deleted) {
                 return node.key;
+            } else {
+                k -= leftSize + (node.deleted ? 0 : 1);
+                node = node.right;
             }
         }
+        return PlateCodec.NONE; // Only reached by an optimistic reader racing a writer
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? size() : rank(hi + 1)) - rank(lo);
+    }
+    
+    /**
+     * Counts the customized plates that come before a key, using subtree counts
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of customized plates strictly less than key
+     */
+    public int customRank(int key) {
+        int rank = 0;
+        Node node = root;
+        int steps = 0;
         
-        // If right subtree exists, the successor is the leftmost node in right subtree
-        if (node.right != null) {
-            return findMin(node.right).key;
+        while (node != null && steps++ < MAX_DEPTH) {
+            if (key > node.key) {
+                rank += customCountOf(node.left) + (node.custom && !node.deleted ? 1 : 0);
+                node = node.right;
+            } else {
+                node = node.left;
+            }
         }
         
-        // Otherwise, find the nearest ancestor where node is in the left subtree
-        Node parent = node.parent;
-        while (parent != null && node == parent.right) {
-            node = parent;
-            parent = parent.parent;
+        return rank;
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? customCountOf(root) : customRank(hi + 1)) - customRank(lo);
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        // Subtree sizes give the exact result length up front
+        final int[] result = new int[count(lo, hi)];
+        range(lo, hi, new PlateVisitor() {
+            private int next = 0;
+            
+            @Override
+            public void visit(int key, boolean custom) {
+                result[next++] = key;
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * Walks in order through parent links, so no intermediate collection or recursion stack is built
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        // Find the first node with key >= lo
+        Node node = root;
+        Node first = null;
+        while (node != null) {
+            if (lo <= node.key) {
+                first = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
         }
         
-        return parent != null ? parent.key : null;
+        for (node = first; node != null && node.key <= hi; node = nextNode(node)) {
+            if (!node.deleted) {
+                visitor.visit(node.key, node.custom);
+            }
+        }
     }
     
     /**
-     * Internal method to find successor of a node
+     * Finds the in-order successor of a node
      */
-    private Node successor(Node node) {
+    private Node nextNode(Node node) {
         // If right subtree exists, the successor is the leftmost node in right subtree
         if (node.right != null) {
             return findMin(node.right);
@@ -324,92 +874,504 @@ public class RBTree {
     }
     
     /**
-     * Internal method to find predecessor of a node
+     * Inserts a batch of plates given in ascending order (repeats allowed) in one pass
+     * Each descent starts from the node touched by the previous plate, climbing only as far
+     * as needed, so nearby plates cost O(log d) for a distance d instead of a full root descent
+     * @param keys Packed plates in non-decreasing order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @param inserted Receives true for each plate that was inserted, false if it already existed
      */
-    private Node predecessor(Node node) {
-        // If left subtree exists, the predecessor is the rightmost node in left subtree
-        if (node.left != null) {
-            return findMax(node.left);
+    @Override
+    public void insertBatch(int[] keys, boolean[] custom, int n, boolean[] inserted) {
+        Node finger = null; // Node of the previous plate; its key is <= the current key
+        
+        for (int i = 0; i < n; i++) {
+            int key = keys[i];
+            Node current = climbFrom(finger, key);
+            Node parent = (current == null) ? null : current.parent;
+            
+            while (current != null && current.key != key) {
+                parent = current;
+                current = (key < current.key) ? current.left : current.right;
+            }
+            
+            if (current != null) {
+                inserted[i] = current.deleted;
+                if (current.deleted) {
+                    revive(current, custom != null && custom[i]);
+                }
+                finger = current;
+                continue;
+            }
+            
+            Node node = newNode(key, RED, custom != null && custom[i]);
+            if (parent == null) {
+                root = node;
+            } else {
+                node.parent = parent;
+                if (key < parent.key) {
+                    parent.left = node;
+                } else {
+                    parent.right = node;
+                }
+                
+                // Every ancestor gains one node
+                for (Node p = parent; p != null; p = p.parent) {
+                    p.size++;
+                    p.customCount += node.customCount;
+                }
+            }
+            
+            fixAfterInsertion(node);
+            inserted[i] = true;
+            finger = node; // Rotations move nodes but never change their keys
+        }
+    }
+    
+    /**
+     * Removes a batch of plates given in ascending order (repeats allowed) in one pass,
+     * using the same finger descents as insertBatch
+     * @param keys Packed plates in non-decreasing order
+     * @param n Number of plates to take from keys
+     * @param types Receives CUSTOM or STANDARD for each removed plate, or NOT_FOUND
+     */
+    @Override
+    public void removeBatch(int[] keys, int n, int[] types) {
+        if (tombstoneLimit > 0) {
+            // Marking needs no structural change, so plain lookups are as good as finger descents
+            for (int i = 0; i < n; i++) {
+                types[i] = remove(keys[i]);
+            }
+            return;
+        }
+        
+        // Node of the largest plate below the previous key. deleteNode only rewrites the
+        // deleted node and its successor, so this node survives with its key unchanged
+        Node finger = null;
+        
+        for (int i = 0; i < n; i++) {
+            int key = keys[i];
+            Node current = climbFrom(finger, key);
+            Node floor = (current == null) ? null : floorAbove(current);
+            
+            while (current != null && current.key != key) {
+                if (key < current.key) {
+                    current = current.left;
+                } else {
+                    floor = current;
+                    current = current.right;
+                }
+            }
+            
+            if (current == null) {
+                types[i] = NOT_FOUND;
+            } else {
+                if (current.left != null) {
+                    floor = findMax(current.left);
+                }
+                types[i] = current.custom ? CUSTOM : STANDARD;
+                release(deleteNode(current));
+            }
+            finger = floor;
+        }
+    }
+    
+    /**
+     * Climbs from a finger node (key <= target) to the lowest ancestor whose subtree
+     * must contain the target's position; starts from the root if there is no finger
+     */
+    private Node climbFrom(Node finger, int key) {
+        if (finger == null) {
+            return root;
         }
         
-        // Otherwise, find the nearest ancestor where node is in the right subtree
+        Node node = finger;
+        // A left child is bounded above by its parent; stop once that bound exceeds the key
+        while (node.parent != null && !(node == node.parent.left && key < node.parent.key)) {
+            node = node.parent;
+        }
+        return node;
+    }
+    
+    /**
+     * Nearest ancestor of a node that holds a smaller key, i.e. the floor candidate a
+     * descent from the root would have recorded on its way down to this node
+     */
+    private Node floorAbove(Node node) {
         Node parent = node.parent;
         while (parent != null && node == parent.left) {
             node = parent;
             parent = parent.parent;
         }
-        
         return parent;
     }
     
     /**
-     * Finds where a node would be inserted
+     * Joins two trees around a pivot plate: every plate of left must be less than key
+     * and every plate of right greater. Runs in O(log n) by hanging the shorter tree off
+     * the spine of the taller one at equal black height. Both input trees are left empty
+     * @param left Tree of smaller plates
+     * @param key Packed pivot plate
+     * @param custom Type of the pivot plate
+     * @param right Tree of larger plates
+     * @return Tree holding left, the pivot and right
+     * @throws IllegalArgumentException if the plates are not ordered around the pivot
      */
-    private Node findInsertionPoint(String key) {
-        if (root == null) return null;
+    public static RBTree join(RBTree left, int key, boolean custom, RBTree right) {
+        left.compact();
+        right.compact();
+        if ((left.root != null && left.findMax(left.root).key >= key)
+                || (right.root != null && right.findMin(right.root).key <= key)) {
+            throw new IllegalArgumentException("Trees are not ordered around the pivot plate");
+        }
         
-        Node current = root;
-        Node parent = null;
+        RBTree result = new RBTree();
+        result.root = joinNodes(left.root, new Node(key, BLACK, custom), right.root);
+        left.root = null;
+        right.root = null;
+        return result;
+    }
+    
+    /**
+     * Splits this tree around a key in O(log n); this tree is left empty
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Two trees: plates less than key, and plates greater than or equal to key
+     */
+    public RBTree[] split(int key) {
+        compact();
+        Split parts = splitNodes(root, key);
+        root = null;
         
-        while (current != null) {
-            parent = current;
-            int cmp = key.compareTo(current.key);
+        // The plate equal to key, if any, is the smallest of the upper part
+        if (parts.match != null) {
+            parts.right = joinNodes(null, parts.match, parts.right);
+        }
+        
+        RBTree lower = new RBTree();
+        RBTree upper = new RBTree();
+        lower.root = parts.left;
+        upper.root = parts.right;
+        return new RBTree[] { lower, upper };
+    }
+    
+    /**
+     * Union of two trees in O(m log(n/m + 1)); a plate in both keeps its type from a.
+     * Both input trees are left empty
+     */
+    public static RBTree union(RBTree a, RBTree b) {
+        return union(a, b, false);
+    }
+    
+    /**
+     * Union of two trees, optionally forking the independent halves onto the common ForkJoinPool
+     */
+    public static RBTree union(RBTree a, RBTree b, boolean parallel) {
+        return setOperation(SetOperation.UNION, a, b, parallel);
+    }
+    
+    /**
+     * Intersection of two trees in O(m log(n/m + 1)); plates keep their type from a.
+     * Both input trees are left empty
+     */
+    public static RBTree intersection(RBTree a, RBTree b) {
+        return intersection(a, b, false);
+    }
+    
+    /**
+     * Intersection of two trees, optionally forking the independent halves onto the common ForkJoinPool
+     */
+    public static RBTree intersection(RBTree a, RBTree b, boolean parallel) {
+        return setOperation(SetOperation.INTERSECTION, a, b, parallel);
+    }
+    
+    /**
+     * Plates of a that are not in b, in O(m log(n/m + 1)). Both input trees are left empty
+     */
+    public static RBTree difference(RBTree a, RBTree b) {
+        return difference(a, b, false);
+    }
+    
+    /**
+     * Difference of two trees, optionally forking the independent halves onto the common ForkJoinPool
+     */
+    public static RBTree difference(RBTree a, RBTree b, boolean parallel) {
+        return setOperation(SetOperation.DIFFERENCE, a, b, parallel);
+    }
+    
+    private static RBTree setOperation(int operation, RBTree a, RBTree b, boolean parallel) {
+        a.compact();
+        b.compact();
+        SetOperation task = new SetOperation(operation, a.root, b.root, parallel);
+        a.root = null;
+        b.root = null;
+        
+        RBTree result = new RBTree();
+        result.root = parallel ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+        return result;
+    }
+    
+    /**
+     * Divide-and-conquer set operation on two detached subtrees: split one around the
+     * other's root, recurse on the two independent halves, and join the results
+     */
+    private static class SetOperation extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        
+        static final int UNION = 0;
+        static final int INTERSECTION = 1;
+        static final int DIFFERENCE = 2;
+        
+        // Below this many plates in total, forking costs more than it saves
+        private static final int PARALLEL_THRESHOLD = 1 << 13;
+        
+        private final int operation;
+        private final Node a, b;
+        private final boolean parallel;
+        
+        SetOperation(int operation, Node a, Node b, boolean parallel) {
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+            this.parallel = parallel;
+        }
+        
+        @Override
+        protected Node compute() {
+            int total = sizeOf(a) + sizeOf(b);
+            if (a == null) {
+                return operation == UNION ? b : null;
+            }
+            if (b == null) {
+                return operation == INTERSECTION ? null : a;
+            }
             
-            if (cmp < 0) {
-                current = current.left;
-            } else if (cmp > 0) {
-                current = current.right;
+            // Union and intersection split b around a's root; difference splits a around b's root
+            Node pivot = (operation == DIFFERENCE) ? b : a;
+            Node other = (operation == DIFFERENCE) ? a : b;
+            Node pivotLeft = detach(pivot.left);
+            Node pivotRight = detach(pivot.right);
+            Split parts = splitNodes(other, pivot.key);
+            
+            SetOperation leftTask = (operation == DIFFERENCE)
+                    ? new SetOperation(operation, parts.left, pivotLeft, parallel)
+                    : new SetOperation(operation, pivotLeft, parts.left, parallel);
+            SetOperation rightTask = (operation == DIFFERENCE)
+                    ? new SetOperation(operation, parts.right, pivotRight, parallel)
+                    : new SetOperation(operation, pivotRight, parts.right, parallel);
+            
+            Node leftResult, rightResult;
+            if (parallel && total >= PARALLEL_THRESHOLD) {
+                leftTask.fork();
+                rightResult = rightTask.compute();
+                leftResult = leftTask.join();
             } else {
-                return current; // Key found
+                leftResult = leftTask.compute();
+                rightResult = rightTask.compute();
+            }
+            
+            switch (operation) {
+                case UNION:
+                    return joinNodes(leftResult, pivot, rightResult);
+                case INTERSECTION:
+                    return parts.match != null ? joinNodes(leftResult, pivot, rightResult) : joinTwo(leftResult, rightResult);
+                default:
+                    // The plate of a equal to b's root, if any, is dropped
+                    return joinTwo(leftResult, rightResult);
             }
         }
-        
-        return parent; // This would be the parent of the new node
     }
     
     /**
-     * Finds all license plates in a given range (inclusive)
-     * @param lo Lower bound
-     * @param hi Upper bound
-     * @return Array of license plates in the range
+     * Pieces of a split: subtrees below and above the key, and the detached node equal to it
      */
-    public String[] range(String lo, String hi) {
-        StringBuilder result = new StringBuilder();
-        rangeSearch(root, lo, hi, result);
-        
-        // If no results, return empty array
-        if (result.length() == 0) {
-            return new String[0];
+    private static class Split {
+        Node left, right, match;
+    }
+    
+    /**
+     * Splits a detached subtree around key, reusing its nodes
+     */
+    private static Split splitNodes(Node node, int key) {
+        if (node == null) {
+            return new Split();
         }
         
-        // Convert result to array (removing last comma)
-        String resultStr = result.toString();
-        return resultStr.substring(0, resultStr.length() - 1).split(",");
+        Node left = detach(node.left);
+        Node right = detach(node.right);
+        
+        Split parts;
+        if (key < node.key) {
+            parts = splitNodes(left, key);
+            parts.right = joinNodes(parts.right, node, right);
+        } else if (key > node.key) {
+            parts = splitNodes(right, key);
+            parts.left = joinNodes(left, node, parts.left);
+        } else {
+            parts = new Split();
+            parts.left = left;
+            parts.right = right;
+            parts.match = node;
+        }
+        return parts;
     }
     
     /**
-     * Internal method for range search
+     * Joins two detached subtrees around a detached pivot node and returns the new root
      */
-    private void rangeSearch(Node node, String lo, String hi, StringBuilder result) {
-        if (node == null) return;
+    private static Node joinNodes(Node left, Node pivot, Node right) {
+        left = detach(left);
+        right = detach(right);
+        pivot.left = null;
+        pivot.right = null;
+        pivot.parent = null;
+        
+        int leftHeight = blackHeight(left);
+        int rightHeight = blackHeight(right);
+        
+        if (leftHeight == rightHeight) {
+            pivot.color = BLACK;
+            link(pivot, left, right);
+            return pivot;
+        }
+        
+        // Work inside the taller tree so rotations during the fixup update its root
+        RBTree taller = new RBTree();
+        boolean leftTaller = leftHeight > rightHeight;
+        taller.root = leftTaller ? left : right;
+        int targetHeight = leftTaller ? rightHeight : leftHeight;
+        
+        // Walk down the inner spine to the first black node (or null) at the shorter tree's black height
+        Node parent = null;
+        Node current = taller.root;
+        int height = leftTaller ? leftHeight : rightHeight;
+        while (current != null && !(current.color == BLACK && height == targetHeight)) {
+            if (current.color == BLACK) {
+                height--;
+            }
+            parent = current;
+            current = leftTaller ? current.right : current.left;
+        }
         
-        int cmpLo = lo.compareTo(node.key);
-        int cmpHi = hi.compareTo(node.key);
+        // Hang the pivot there as a red node with the shorter tree as its other child
+        pivot.color = RED;
+        pivot.parent = parent;
+        if (leftTaller) {
+            link(pivot, current, right);
+            parent.right = pivot;
+        } else {
+            link(pivot, left, current);
+            parent.left = pivot;
+        }
         
-        // Search left subtree if lo is less than current node
-        if (cmpLo < 0) {
-            rangeSearch(node.left, lo, hi, result);
+        for (Node p = parent; p != null; p = p.parent) {
+            updateCounts(p);
         }
         
-        // Include current node if within range
-        if (cmpLo <= 0 && cmpHi >= 0) {
-            result.append(node.key).append(",");
+        taller.fixAfterInsertion(pivot);
+        return taller.root;
+    }
+    
+    /**
+     * Joins two detached subtrees with every plate of left below every plate of right
+     */
+    private static Node joinTwo(Node left, Node right) {
+        if (left == null) {
+            return detach(right);
+        }
+        if (right == null) {
+            return detach(left);
         }
         
-        // Search right subtree if hi is greater than current node
-        if (cmpHi > 0) {
-            rangeSearch(node.right, lo, hi, result);
+        // Take the largest plate out of left and use its node as the pivot; the node
+        // max has no right child, so deleteNode unlinks it and it must not be released
+        RBTree lower = new RBTree();
+        lower.root = detach(left);
+        Node max = lower.findMax(lower.root);
+        lower.deleteNode(max);
+        return joinNodes(lower.root, max, right);
+    }
+    
+    /**
+     * Sets a node's children and their parent links, and recomputes its counts
+     */
+    private static void link(Node node, Node left, Node right) {
+        node.left = left;
+        node.right = right;
+        if (left != null) {
+            left.parent = node;
+        }
+        if (right != null) {
+            right.parent = node;
+        }
+        updateCounts(node);
+    }
+    
+    /**
+     * Turns a subtree into a standalone tree: no parent and a black root
+     */
+    private static Node detach(Node node) {
+        if (node != null) {
+            node.parent = null;
+            node.color = BLACK;
+        }
+        return node;
+    }
+    
+    /**
+     * Number of black nodes on any path from node down to a leaf
+     */
+    private static int blackHeight(Node node) {
+        int height = 0;
+        for (; node != null; node = node.left) {
+            if (node.color == BLACK) {
+                height++;
+            }
+        }
+        return height;
+    }
+    
+    /**
+     * String-keyed convenience methods; plates are packed with PlateCodec
+     * @throws IllegalArgumentException if a plate is not a valid 4-character plate
+     */
+    public boolean insert(String plate) {
+        return insert(packOrThrow(plate));
+    }
+    
+    public boolean delete(String plate) {
+        return delete(packOrThrow(plate));
+    }
+    
+    public boolean search(String plate) {
+        return search(packOrThrow(plate));
+    }
+    
+    public String predecessor(String plate) {
+        int key = predecessor(packOrThrow(plate));
+        return key == PlateCodec.NONE ? null : PlateCodec.decode(key);
+    }
+    
+    public String successor(String plate) {
+        int key = successor(packOrThrow(plate));
+        return key == PlateCodec.NONE ? null : PlateCodec.decode(key);
+    }
+    
+    public String[] range(String lo, String hi) {
+        int[] keys = range(packOrThrow(lo), packOrThrow(hi));
+        String[] plates = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            plates[i] = PlateCodec.decode(keys[i]);
         }
+        return plates;
+    }
+    
+    private static int packOrThrow(String plate) {
+        int key = PlateCodec.encode(plate);
+        if (key == PlateCodec.NONE) {
+            throw new IllegalArgumentException("Invalid plate number: " + plate);
+        }
+        return key;
     }
     
     /**
@@ -419,6 +1381,7 @@ public class RBTree {
         node.color = RED;
         
         while (node != null && node != root && node.parent.color == RED) {
+            rebalanceSteps++;
             if (parentOf(node) == leftOf(parentOf(parentOf(node)))) {
                 Node uncle = rightOf(parentOf(parentOf(node)));
                 
@@ -473,6 +1436,7 @@ public class RBTree {
      */
     private void fixAfterDeletion(Node x) {
         while (x != root && colorOf(x) == BLACK) {
+            rebalanceSteps++;
             if (x == leftOf(parentOf(x))) {
                 Node sibling = rightOf(parentOf(x));
                 
@@ -569,6 +1533,10 @@ public class RBTree {
         
         y.left = x;
         x.parent = y;
+        
+        updateCounts(x);
+        updateCounts(y);
+        rotations++;
     }
     
     /**
@@ -596,11 +1564,29 @@ public class RBTree {
         
         y.right = x;
         x.parent = y;
+        
+        updateCounts(x);
+        updateCounts(y);
+        rotations++;
     }
     
     /**
      * Helper methods for accessing node properties with null checks
      */
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+    
+    private static int customCountOf(Node node) {
+        return node == null ? 0 : node.customCount;
+    }
+    
+    private static void updateCounts(Node node) {
+        int live = node.deleted ? 0 : 1;
+        node.size = sizeOf(node.left) + sizeOf(node.right) + live;
+        node.customCount = customCountOf(node.left) + customCountOf(node.right) + (node.custom ? live : 0);
+    }
+    
     private boolean colorOf(Node node) {
         return node == null ? BLACK : node.color;
     }
@@ -0,0 +1,728 @@
+/**
+ * Adaptive radix trie for the Flying Broomstick Management System
+ * Each level of the trie consumes one plate character, so every search, insert
+ * and delete follows the same fixed path: three inner nodes, then a leaf whose
+ * 36-bit mask records which final characters are registered
+ * As in an ART, inner nodes change layout with their number of children: sorted
+ * arrays of 4 or 16 (digit, child) pairs while sparse, and a direct 36-slot
+ * array once dense, growing and shrinking as plates come and go
+ * Every inner node keeps the plate and customized-plate counts below it, so
+ * range counts, rank and select add whole subtrees instead of visiting them,
+ * and range queries only enter subtrees whose prefix overlaps the range
+ * Offers the same operations as RBTree
+ */
+public class RadixTrie implements PlateIndex {
+    private static final int FANOUT = PlateCodec.RADIX; // Children per level: one per plate character
+    private static final int LEAF_LEVEL = PlateCodec.PLATE_LENGTH - 1; // Level resolved by the leaf mask
+    private static final int[] PLACE = {FANOUT * FANOUT * FANOUT, FANOUT * FANOUT, FANOUT, 1}; // Key value of one digit at each level
+    
+    private final FullNode root = new FullNode(); // The first character is dense in any sizeable registry
+    
+    /**
+     * Common part of inner nodes and leaves
+     */
+    private abstract static class Node {
+    }
+    
+    /**
+     * Last level: bit d of present is set if the plate ending in digit d is registered
+     */
+    private static final class Leaf extends Node {
+        long present;
+        long custom; // Subset of present that is customized
+    }
+    
+    /**
+     * Inner node; the subclasses differ only in how children are laid out
+     */
+    private abstract static class Inner extends Node {
+        int size; // Plates below this node
+        int customSize; // Customized plates below this node
+        int count; // Children
+        
+        /**
+         * Child for a digit, or null
+         */
+        abstract Node find(int digit);
+        
+        /**
+         * Adds a child for a digit that has none; the node must not be full
+         */
+        abstract void put(int digit, Node child);
+        
+        /**
+         * Swaps the child of a digit for another node (after it grew or shrank)
+         */
+        abstract void replace(int digit, Node child);
+        
+        /**
+         * Removes the child of a digit
+         */
+        abstract void erase(int digit);
+        
+        /**
+         * Smallest digit above the given one that has a child, or -1
+         */
+        abstract int higherDigit(int digit);
+        
+        /**
+         * Largest digit below the given one that has a child, or -1
+         */
+        abstract int lowerDigit(int digit);
+        
+        abstract boolean isFull();
+        
+        /**
+         * Same children in the next larger layout
+         */
+        abstract Inner grow();
+        
+        /**
+         * Same children in a smaller layout if this one is mostly empty, else this node
+         */
+        abstract Inner shrink();
+        
+        void copyCounts(Inner from) {
+            size = from.size;
+            customSize = from.customSize;
+        }
+    }
+    
+    /**
+     * Sparse layout: up to 4 or 16 children in digit order, searched linearly
+     */
+    private static final class SortedNode extends Inner {
+        final byte[] digits;
+        final Node[] children;
+        
+        SortedNode(int capacity) {
+            digits = new byte[capacity];
+            children = new Node[capacity];
+        }
+        
+        @Override
+        Node find(int digit) {
+            for (int i = 0; i < count && digits[i] <= digit; i++) {
+                if (digits[i] == digit) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+        
+        @Override
+        void put(int digit, Node child) {
+            int i = count;
+            while (i > 0 && digits[i - 1] > digit) {
+                digits[i] = digits[i - 1];
+                children[i] = children[i - 1];
+                i--;
+            }
+            digits[i] = (byte) digit;
+            children[i] = child;
+            count++;
+        }
+        
+        @Override
+        void replace(int digit, Node child) {
+            for (int i = 0; i < count; i++) {
+                if (digits[i] == digit) {
+                    children[i] = child;
+                    return;
+                }
+            }
+        }
+        
+        @Override
+        void erase(int digit) {
+            int i = 0;
+            while (digits[i] != digit) {
+                i++;
+            }
+            System.arraycopy(digits, i + 1, digits, i, count - i - 1);
+            System.arraycopy(children, i + 1, children, i, count - i - 1);
+            children[--count] = null;
+        }
+        
+        @Override
+        int higherDigit(int digit) {
+            for (int i = 0; i < count; i++) {
+                if (digits[i] > digit) {
+                    return digits[i];
+                }
+            }
+            return -1;
+        }
+        
+        @Override
+        int lowerDigit(int digit) {
+            for (int i = count - 1; i >= 0; i--) {
+                if (digits[i] < digit) {
+                    return digits[i];
+                }
+            }
+            return -1;
+        }
+        
+        @Override
+        boolean isFull() {
+            return count == digits.length;
+        }
+        
+        @Override
+        Inner grow() {
+            Inner bigger = (digits.length == 4) ? new SortedNode(16) : new FullNode();
+            for (int i = 0; i < count; i++) {
+                bigger.put(digits[i], children[i]);
+            }
+            bigger.copyCounts(this);
+            return bigger;
+        }
+        
+        @Override
+        Inner shrink() {
+            if (digits.length == 4 || count == 0 || count > 3) {
+                return this;
+            }
+            SortedNode smaller = new SortedNode(4);
+            System.arraycopy(digits, 0, smaller.digits, 0, count);
+            System.arraycopy(children, 0, smaller.children, 0, count);
+            smaller.count = count;
+            smaller.copyCounts(this);
+            return smaller;
+        }
+    }
+    
+    /**
+     * Dense layout: one slot per digit
+     */
+    private static final class FullNode extends Inner {
+        final Node[] children = new Node[FANOUT];
+        
+        @Override
+        Node find(int digit) {
+            return children[digit];
+        }
+        
+        @Override
+        void put(int digit, Node child) {
+            children[digit] = child;
+            count++;
+        }
+        
+        @Override
+        void replace(int digit, Node child) {
+            children[digit] = child;
+        }
+        
+        @Override
+        void erase(int digit) {
+            children[digit] = null;
+            count--;
+        }
+        
+        @Override
+        int higherDigit(int digit) {
+            for (int d = digit + 1; d < FANOUT; d++) {
+                if (children[d] != null) {
+                    return d;
+                }
+            }
+            return -1;
+        }
+        
+        @Override
+        int lowerDigit(int digit) {
+            for (int d = Math.min(digit, FANOUT) - 1; d >= 0; d--) {
+                if (children[d] != null) {
+                    return d;
+                }
+            }
+            return -1;
+        }
+        
+        @Override
+        boolean isFull() {
+            return false;
+        }
+        
+        @Override
+        Inner grow() {
+            return this;
+        }
+        
+        @Override
+        Inner shrink() {
+            if (count == 0 || count > 12) {
+                return this;
+            }
+            SortedNode smaller = new SortedNode(16);
+            for (int d = 0; d < FANOUT; d++) {
+                if (children[d] != null) {
+                    smaller.put(d, children[d]);
+                }
+            }
+            smaller.copyCounts(this);
+            return smaller;
+        }
+    }
+    
+    /**
+     * Checks if the trie is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return root.size == 0;
+    }
+    
+    /**
+     * Number of plates in the trie
+     */
+    @Override
+    public int size() {
+        return root.size;
+    }
+    
+    /**
+     * Inserts a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Inserts a plate along its fixed four-level path
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        PlateCodec.checkKey(key);
+        if (search(key)) {
+            return false;
+        }
+        
+        Inner parent = null;
+        int parentDigit = 0;
+        Inner node = root;
+        for (int level = 0; ; level++) {
+            node.size++;
+            if (custom) {
+                node.customSize++;
+            }
+            
+            int digit = digitOf(key, level);
+            Node child = node.find(digit);
+            if (child == null) {
+                child = (level == LEAF_LEVEL - 1) ? new Leaf() : new SortedNode(4);
+                if (node.isFull()) {
+                    // Only non-root nodes fill up, so parent is set here
+                    Inner grown = node.grow();
+                    parent.replace(parentDigit, grown);
+                    node = grown;
+                }
+                node.put(digit, child);
+            }
+            
+            if (level == LEAF_LEVEL - 1) {
+                Leaf leaf = (Leaf) child;
+                long bit = 1L << digitOf(key, LEAF_LEVEL);
+                leaf.present |= bit;
+                if (custom) {
+                    leaf.custom |= bit;
+                }
+                return true;
+            }
+            
+            parent = node;
+            parentDigit = digit;
+            node = (Inner) child;
+        }
+    }
+    
+    /**
+     * Checks if a plate exists
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        if (!PlateCodec.isKey(key)) {
+            return false;
+        }
+        
+        Leaf leaf = findLeaf(key);
+        return leaf != null && (leaf.present & (1L << digitOf(key, LEAF_LEVEL))) != 0;
+    }
+    
+    /**
+     * Deletes a plate
+     * @param key Packed license plate number to delete
+     * @return true if deleted successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Deletes a plate and reports its type, releasing nodes left empty
+     * @param key Packed license plate number to delete
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        if (!PlateCodec.isKey(key)) {
+            return NOT_FOUND;
+        }
+        
+        Inner[] path = new Inner[LEAF_LEVEL];
+        Node node = root;
+        for (int level = 0; level < LEAF_LEVEL; level++) {
+            path[level] = (Inner) node;
+            node = path[level].find(digitOf(key, level));
+            if (node == null) {
+                return NOT_FOUND;
+            }
+        }
+        
+        Leaf leaf = (Leaf) node;
+        long bit = 1L << digitOf(key, LEAF_LEVEL);
+        if ((leaf.present & bit) == 0) {
+            return NOT_FOUND;
+        }
+        
+        boolean custom = (leaf.custom & bit) != 0;
+        leaf.present &= ~bit;
+        leaf.custom &= ~bit;
+        for (Inner inner : path) {
+            inner.size--;
+            if (custom) {
+                inner.customSize--;
+            }
+        }
+        
+        // Unlink emptied nodes bottom-up, and move thinned-out ones to a smaller layout
+        boolean childEmpty = leaf.present == 0;
+        for (int level = LEAF_LEVEL - 1; level >= 0 && childEmpty; level--) {
+            Inner inner = path[level];
+            inner.erase(digitOf(key, level));
+            if (level > 0) {
+                Inner smaller = inner.shrink();
+                if (smaller != inner) {
+                    path[level - 1].replace(digitOf(key, level - 1), smaller);
+                }
+            }
+            childEmpty = inner.count == 0;
+        }
+        return custom ? CUSTOM : STANDARD;
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key
+     * @param key Packed license plate number (need not be in the trie)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
+     */
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        result.found = search(key);
+        result.prev = predecessor(key);
+        result.next = successor(key);
+        return result;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * Descends the key's own path, then backs up to the nearest smaller sibling prefix
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        if (key <= 0) {
+            return PlateCodec.NONE;
+        }
+        if (key >= PlateCodec.UNIVERSE) {
+            return isEmpty() ? PlateCodec.NONE : maxBelow(root, 0);
+        }
+        return predecessor(root, 0, key);
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order)
+     * Descends the key's own path, then backs up to the nearest larger sibling prefix
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        if (key >= PlateCodec.UNIVERSE - 1) {
+            return PlateCodec.NONE;
+        }
+        if (key < 0) {
+            return isEmpty() ? PlateCodec.NONE : minBelow(root, 0);
+        }
+        return successor(root, 0, key);
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        final int[] result = new int[count(lo, hi)];
+        range(lo, hi, new PlateVisitor() {
+            int next = 0;
+            
+            @Override
+            public void visit(int key, boolean custom) {
+                result[next++] = key;
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * Only subtrees whose prefix overlaps [lo, hi] are entered
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        if (lo <= hi) {
+            range(root, 0, 0, lo, hi, visitor);
+        }
+    }
+    
+    /**
+     * Counts the plates that come before a key
+     * @param key Packed license plate number (need not be in the trie)
+     * @return Number of plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        return key <= 0 ? 0 : count(0, key - 1);
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        if (k < 0 || k >= root.size) {
+            return PlateCodec.NONE;
+        }
+        
+        int key = 0;
+        Node node = root;
+        for (int level = 0; level < LEAF_LEVEL; level++) {
+            Inner inner = (Inner) node;
+            for (int d = inner.higherDigit(-1); ; d = inner.higherDigit(d)) {
+                Node child = inner.find(d);
+                int below = sizeOf(child);
+                if (k < below) {
+                    key += d * PLACE[level];
+                    node = child;
+                    break;
+                }
+                k -= below;
+            }
+        }
+        
+        // Drop the k lowest final characters of the leaf
+        long mask = ((Leaf) node).present;
+        for (int i = 0; i < k; i++) {
+            mask &= mask - 1;
+        }
+        return key + Long.numberOfTrailingZeros(mask);
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive), adding the counts of whole subtrees
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        return (lo <= hi) ? count(root, 0, 0, lo, hi, false) : 0;
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        lo = Math.max(lo, 0);
+        hi = Math.min(hi, PlateCodec.UNIVERSE - 1);
+        return (lo <= hi) ? count(root, 0, 0, lo, hi, true) : 0;
+    }
+    
+    /**
+     * Largest plate below node whose remaining digits come before key's
+     */
+    private static int predecessor(Node node, int level, int key) {
+        int digit = digitOf(key, level);
+        if (level == LEAF_LEVEL) {
+            long mask = ((Leaf) node).present & ((1L << digit) - 1);
+            return (mask == 0) ? PlateCodec.NONE : 63 - Long.numberOfLeadingZeros(mask);
+        }
+        
+        Inner inner = (Inner) node;
+        Node child = inner.find(digit);
+        if (child != null) {
+            int below = predecessor(child, level + 1, key);
+            if (below != PlateCodec.NONE) {
+                return digit * PLACE[level] + below;
+            }
+        }
+        
+        int lower = inner.lowerDigit(digit);
+        return (lower < 0) ? PlateCodec.NONE : lower * PLACE[level] + maxBelow(inner.find(lower), level + 1);
+    }
+    
+    /**
+     * Smallest plate below node whose remaining digits come after key's
+     */
+    private static int successor(Node node, int level, int key) {
+        int digit = digitOf(key, level);
+        if (level == LEAF_LEVEL) {
+            long mask = ((Leaf) node).present & (-1L << (digit + 1));
+            return (mask == 0) ? PlateCodec.NONE : Long.numberOfTrailingZeros(mask);
+        }
+        
+        Inner inner = (Inner) node;
+        Node child = inner.find(digit);
+        if (child != null) {
+            int below = successor(child, level + 1, key);
+            if (below != PlateCodec.NONE) {
+                return digit * PLACE[level] + below;
+            }
+        }
+        
+        int higher = inner.higherDigit(digit);
+        return (higher < 0) ? PlateCodec.NONE : higher * PLACE[level] + minBelow(inner.find(higher), level + 1);
+    }
+    
+    /**
+     * Largest remaining-digits value stored below a non-empty node
+     */
+    private static int maxBelow(Node node, int level) {
+        int value = 0;
+        for (; level < LEAF_LEVEL; level++) {
+            Inner inner = (Inner) node;
+            int d = inner.lowerDigit(FANOUT);
+            value += d * PLACE[level];
+            node = inner.find(d);
+        }
+        return value + 63 - Long.numberOfLeadingZeros(((Leaf) node).present);
+    }
+    
+    /**
+     * Smallest remaining-digits value stored below a non-empty node
+     */
+    private static int minBelow(Node node, int level) {
+        int value = 0;
+        for (; level < LEAF_LEVEL; level++) {
+            Inner inner = (Inner) node;
+            int d = inner.higherDigit(-1);
+            value += d * PLACE[level];
+            node = inner.find(d);
+        }
+        return value + Long.numberOfTrailingZeros(((Leaf) node).present);
+    }
+    
+    /**
+     * Visits the plates of [lo, hi] below a node whose subtree starts at key value base
+     */
+    private static void range(Node node, int level, int base, int lo, int hi, PlateVisitor visitor) {
+        int from = Math.max(lo - base, 0) / PLACE[level];
+        int to = Math.min(hi - base, PLACE[level] * FANOUT - 1) / PLACE[level];
+        
+        if (level == LEAF_LEVEL) {
+            Leaf leaf = (Leaf) node;
+            long mask = leaf.present & (-1L << from) & (-1L >>> (63 - to));
+            while (mask != 0) {
+                int d = Long.numberOfTrailingZeros(mask);
+                visitor.visit(base + d, (leaf.custom & (1L << d)) != 0);
+                mask &= mask - 1; // Clear lowest set bit
+            }
+            return;
+        }
+        
+        Inner inner = (Inner) node;
+        for (int d = inner.higherDigit(from - 1); d >= 0 && d <= to; d = inner.higherDigit(d)) {
+            range(inner.find(d), level + 1, base + d * PLACE[level], lo, hi, visitor);
+        }
+    }
+    
+    /**
+     * Counts the (customized) plates of [lo, hi] below a node whose subtree starts at key value base
+     */
+    private static int count(Node node, int level, int base, int lo, int hi, boolean customOnly) {
+        int span = PLACE[level] * FANOUT;
+        if (lo <= base && hi >= base + span - 1) {
+            return customOnly ? customSizeOf(node) : sizeOf(node); // Whole subtree is inside the range
+        }
+        
+        int from = Math.max(lo - base, 0) / PLACE[level];
+        int to = Math.min(hi - base, span - 1) / PLACE[level];
+        
+        if (level == LEAF_LEVEL) {
+            Leaf leaf = (Leaf) node;
+            long mask = (customOnly ? leaf.custom : leaf.present) & (-1L << from) & (-1L >>> (63 - to));
+            return Long.bitCount(mask);
+        }
+        
+        int count = 0;
+        Inner inner = (Inner) node;
+        for (int d = inner.higherDigit(from - 1); d >= 0 && d <= to; d = inner.higherDigit(d)) {
+            count += count(inner.find(d), level + 1, base + d * PLACE[level], lo, hi, customOnly);
+        }
+        return count;
+    }
+    
+    /**
+     * Leaf on a key's path, or null if some prefix of the key is absent
+     */
+    private Leaf findLeaf(int key) {
+        Node node = root;
+        for (int level = 0; level < LEAF_LEVEL && node != null; level++) {
+            node = ((Inner) node).find(digitOf(key, level));
+        }
+        return (Leaf) node;
+    }
+    
+    /**
+     * Plate character (as a digit) of a key at a level
+     */
+    private static int digitOf(int key, int level) {
+        return (key / PLACE[level]) % FANOUT;
+    }
+    
+    private static int sizeOf(Node node) {
+        return (node instanceof Leaf) ? Long.bitCount(((Leaf) node).present) : ((Inner) node).size;
+    }
+    
+    private static int customSizeOf(Node node) {
+        return (node instanceof Leaf) ? Long.bitCount(((Leaf) node).custom) : ((Inner) node).customSize;
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.Random;
+
+/**
+ * Multi-threaded throughput benchmark for the thread-safe registries
+ * Runs a read-mostly mix (lookupLicence/lookupPrev/lookupNext/lookupRange with
+ * occasional addLicence/dropLicence) against StampedRegistry and against the same
+ * RBTree behind a plain synchronized wrapper, for 1, 2, 4, ... threads
+ * Usage: java RegistryBenchmark [maxThreads] [opsPerThread] [writePercent]
+ */
+public class RegistryBenchmark {
+    private static final int PRELOAD = 200000; // Plates registered before timing starts
+    private static final int RANGE_WIDTH = 64; // Width of lookupRange queries, in packed keys
+    
+    /**
+     * Operations the benchmark drives, implemented by both registries
+     */
+    private interface Registry {
+        boolean insert(int key, boolean custom);
+        int remove(int key);
+        PlateIndex.Navigation navigate(int key, PlateIndex.Navigation result);
+        void range(int lo, int hi, PlateVisitor visitor);
+    }
+    
+    /**
+     * Baseline: every operation, reads included, holds the registry's monitor
+     */
+    private static class SynchronizedRegistry implements Registry {
+        private final RBTree tree = new RBTree();
+        
+        @Override
+        public synchronized boolean insert(int key, boolean custom) {
+            return tree.insert(key, custom);
+        }
+        
+        @Override
+        public synchronized int remove(int key) {
+            return tree.remove(key);
+        }
+        
+        @Override
+        public synchronized PlateIndex.Navigation navigate(int key, PlateIndex.Navigation result) {
+            return tree.navigate(key, result);
+        }
+        
+        @Override
+        public synchronized void range(int lo, int hi, PlateVisitor visitor) {
+            tree.range(lo, hi, visitor);
+        }
+    }
+    
+    /**
+     * Adapts StampedRegistry to the benchmark's Registry interface
+     */
+    private static class StampedAdapter implements Registry {
+        private final StampedRegistry registry = new StampedRegistry();
+        
+        @Override
+        public boolean insert(int key, boolean custom) {
+            return registry.insert(key, custom);
+        }
+        
+        @Override
+        public int remove(int key) {
+            return registry.remove(key);
+        }
+        
+        @Override
+        public PlateIndex.Navigation navigate(int key, PlateIndex.Navigation result) {
+            return registry.navigate(key, result);
+        }
+        
+        @Override
+        public void range(int lo, int hi, PlateVisitor visitor) {
+            registry.range(lo, hi, visitor);
+        }
+    }
+    
+    /**
+     * One benchmark thread: a fixed number of operations from its own random stream
+     */
+    private static class Worker extends Thread {
+        private final Registry registry;
+        private final int ops;
+        private final int writePercent;
+        private final Random random;
+        long checksum; // Keeps the JIT from discarding lookups
+        
+        Worker(Registry registry, int ops, int writePercent, long seed) {
+            this.registry = registry;
+            this.ops = ops;
+            this.writePercent = writePercent;
+            this.random = new Random(seed);
+        }
+        
+        @Override
+        public void run() {
+            PlateIndex.Navigation navigation = new PlateIndex.Navigation();
+            PlateVisitor counter = new PlateVisitor() {
+                @Override
+                public void visit(int key, boolean custom) {
+                    checksum += key;
+                }
+            };
+            
+            for (int i = 0; i < ops; i++) {
+                int key = random.nextInt(PlateCodec.UNIVERSE);
+                int choice = random.nextInt(100);
+                if (choice < writePercent) {
+                    // Alternate inserts and removals so the registry keeps its size
+                    if ((choice & 1) == 0) {
+                        registry.insert(key, random.nextBoolean());
+                    } else {
+                        registry.remove(key);
+                    }
+                } else if (choice < 95) {
+                    registry.navigate(key, navigation);
+                    checksum += navigation.prev + navigation.next;
+                } else {
+                    registry.range(key, Math.min(key + RANGE_WIDTH, PlateCodec.UNIVERSE - 1), counter);
+                }
+            }
+        }
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        int writePercent = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        
+        System.out.println("threads  synchronized (Mops/s)  stamped (Mops/s)");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double plain = run(new SynchronizedRegistry(), threads, opsPerThread, writePercent);
+            double stamped = run(new StampedAdapter(), threads, opsPerThread, writePercent);
+            System.out.printf("%7d  %21.2f  %16.2f%n", threads, plain, stamped);
+        }
+    }
+    
+    /**
+     * Preloads a registry, runs the workers and returns the throughput in millions of operations per second
+     */
+    private static double run(Registry registry, int threads, int opsPerThread, int writePercent)
+            throws InterruptedException {
+        Random random = new Random(42);
+        for (int i = 0; i < PRELOAD; i++) {
+            registry.insert(random.nextInt(PlateCodec.UNIVERSE), random.nextBoolean());
+        }
+        
+        Worker[] workers = new Worker[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(registry, opsPerThread, writePercent, t + 1);
+        }
+        
+        long start = System.nanoTime();
+        for (Worker worker : workers) {
+            worker.start();
+        }
+        for (Worker worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        return (double) threads * opsPerThread * 1000.0 / elapsed;
+    }
+}
@@ -0,0 +1,344 @@
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe registry facade over RBTree for read-mostly workloads
+ * Holds the tree together with the standard/custom plate counts that plateMgmt
+ * keeps for revenue, and guards both with one StampedLock
+ * Lookups, rank/select, counts and revenue first run as optimistic reads, which
+ * take no lock and write no shared state, and retry under the read lock only if a
+ * writer got in between. Updates, batches included, take the write lock
+ * Range results are streamed to the caller while the tree is walked, so they
+ * cannot be taken back after a failed validation and always use the read lock
+ */
+public class StampedRegistry implements PlateIndex {
+    private final StampedLock lock = new StampedLock();
+    private final RBTree tree = new RBTree();
+    private int standardCount = 0; // Registered standard plates
+    private int customCount = 0; // Registered customized plates
+    
+    /**
+     * A lookup on the tree that read() can run optimistically
+     */
+    private interface TreeRead {
+        int apply(RBTree tree, int a, int b);
+    }
+    
+    private static final TreeRead SEARCH = new TreeRead() {
+        @Override
+        public int apply(RBTree tree, int key, int unused) {
+            return tree.search(key) ? 1 : 0;
+        }
+    };
+    
+    private static final TreeRead PREDECESSOR = new TreeRead() {
+        @Override
+        public int apply(RBTree tree, int key, int unused) {
+            return tree.predecessor(key);
+        }
+    };
+    
+    private static final TreeRead SUCCESSOR = new TreeRead() {
+        @Override
+        public int apply(RBTree tree, int key, int unused) {
+            return tree.successor(key);
+        }
+    };
+    
+    private static final TreeRead RANK = new TreeRead() {
+        @Override
+        public int apply(RBTree tree, int key, int unused) {
+            return tree.rank(key);
+        }
+    };
+    
+    private static final TreeRead SELECT = new TreeRead() {
+        @Override
+        public int apply(RBTree tree, int k, int unused) {
+            return tree.select(k);
+        }
+    };
+    
+    private static final TreeRead COUNT = new TreeRead() {
+        @Override
+        public int apply(RBTree tree, int lo, int hi) {
+            return tree.count(lo, hi);
+        }
+    };
+    
+    private static final TreeRead COUNT_CUSTOM = new TreeRead() {
+        @Override
+        public int apply(RBTree tree, int lo, int hi) {
+            return tree.countCustom(lo, hi);
+        }
+    };
+    
+    /**
+     * Registers a plate
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        long stamp = lock.writeLock();
+        try {
+            if (!tree.insert(key, custom)) {
+                return false;
+            }
+            if (custom) {
+                customCount++;
+            } else {
+                standardCount++;
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Removes a plate and reports its type
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        long stamp = lock.writeLock();
+        try {
+            int type = tree.remove(key);
+            if (type == CUSTOM) {
+                customCount--;
+            } else if (type == STANDARD) {
+                standardCount--;
+            }
+            return type;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key; optimistic
+     * @param key Packed license plate number (need not be registered)
+     * @param result Navigation to fill in, owned by the calling thread
+     * @return result
+     */
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        // Same pattern as read(), which returns one int where navigate fills in three fields
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                tree.navigate(key, result);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A writer relinked nodes under us; read again under the lock
+            }
+        }
+        
+        // A writer was active; the result may be torn, so read again under the lock
+        stamp = lock.readLock();
+        try {
+            return tree.navigate(key, result);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Checks if a plate is registered; optimistic
+     */
+    @Override
+    public boolean search(int key) {
+        return read(SEARCH, key, 0) != 0;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order); optimistic
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        return read(PREDECESSOR, key, 0);
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order); optimistic
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        return read(SUCCESSOR, key, 0);
+    }
+    
+    /**
+     * Counts the plates that come before a key, in O(log n); optimistic
+     */
+    @Override
+    public int rank(int key) {
+        return read(RANK, key, 0);
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order, in O(log n); optimistic
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        return read(SELECT, k, 0);
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor, under the read lock
+     * The visitor must not call back into this registry's update methods
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        long stamp = lock.readLock();
+        try {
+            tree.range(lo, hi, visitor);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive), in O(log n); optimistic
+     */
+    @Override
+    public int count(int lo, int hi) {
+        return read(COUNT, lo, hi);
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive), in O(log n); optimistic
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        return read(COUNT_CUSTOM, lo, hi);
+    }
+    
+    /**
+     * Replaces the contents with plates given in ascending order, under the write lock
+     * @throws IllegalArgumentException if keys are not strictly ascending
+     */
+    @Override
+    public void loadSorted(int[] keys, boolean[] custom, int n) {
+        long stamp = lock.writeLock();
+        try {
+            tree.loadSorted(keys, custom, n);
+            customCount = tree.countCustom(0, PlateCodec.UNIVERSE - 1);
+            standardCount = tree.size() - customCount;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Inserts a batch of plates given in ascending order, under one write lock
+     */
+    @Override
+    public void insertBatch(int[] keys, boolean[] custom, int n, boolean[] inserted) {
+        long stamp = lock.writeLock();
+        try {
+            tree.insertBatch(keys, custom, n, inserted);
+            for (int i = 0; i < n; i++) {
+                if (!inserted[i]) {
+                    continue;
+                }
+                if (custom != null && custom[i]) {
+                    customCount++;
+                } else {
+                    standardCount++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Removes a batch of plates given in ascending order, under one write lock
+     */
+    @Override
+    public void removeBatch(int[] keys, int n, int[] types) {
+        long stamp = lock.writeLock();
+        try {
+            tree.removeBatch(keys, n, types);
+            for (int i = 0; i < n; i++) {
+                if (types[i] == CUSTOM) {
+                    customCount--;
+                } else if (types[i] == STANDARD) {
+                    standardCount--;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Number of registered plates; optimistic
+     */
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = standardCount + customCount;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = standardCount + customCount;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Runs a lookup as an optimistic read, then under the read lock if a writer got in between
+     * The tree's lookup walks are capped in length, so an optimistic pass always ends; a
+     * torn read may still fail with an exception, which is treated like a failed validation
+     */
+    private int read(TreeRead read, int a, int b) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int result = read.apply(tree, a, b);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // A writer relinked nodes under us; read again under the lock
+            }
+        }
+        
+        stamp = lock.readLock();
+        try {
+            return read.apply(tree, a, b);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Current annual revenue in Galleons, from one consistent pair of counts; optimistic
+     */
+    public int revenue() {
+        long stamp = lock.tryOptimisticRead();
+        int standard = standardCount;
+        int custom = customCount;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                standard = standardCount;
+                custom = customCount;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return standard * plateMgmt.STANDARD_FEE + custom * (plateMgmt.STANDARD_FEE + plateMgmt.CUSTOM_FEE);
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.Random;
+
+/**
+ * Predecessor/successor benchmark: VEBTree against RBTree
+ * For each registry size, loads the same random plates into both engines and
+ * times the same sequence of random lookupPrev/lookupNext queries
+ * Usage: java VEBBenchmark [queries] [size ...]
+ */
+public class VEBBenchmark {
+    private static final int ROUNDS = 5; // Timed rounds per engine and size; the best one is reported
+    
+    public static void main(String[] args) {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int[] sizes = {1000, 10000, 100000, 1000000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        System.out.println("   plates  RBTree (ns/query)  VEBTree (ns/query)");
+        for (int size : sizes) {
+            RBTree tree = new RBTree();
+            VEBTree veb = new VEBTree();
+            Random random = new Random(size);
+            while (tree.size() < Math.min(size, PlateCodec.UNIVERSE)) {
+                int key = random.nextInt(PlateCodec.UNIVERSE);
+                tree.insert(key);
+                veb.insert(key);
+            }
+            
+            int[] keys = new int[queries];
+            for (int i = 0; i < queries; i++) {
+                keys[i] = random.nextInt(PlateCodec.UNIVERSE);
+            }
+            
+            long treeBest = Long.MAX_VALUE;
+            long vebBest = Long.MAX_VALUE;
+            long checksum = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i + 1 < queries; i += 2) {
+                    checksum += tree.predecessor(keys[i]) + tree.successor(keys[i + 1]);
+                }
+                long middle = System.nanoTime();
+                for (int i = 0; i + 1 < queries; i += 2) {
+                    checksum -= veb.predecessor(keys[i]) + veb.successor(keys[i + 1]);
+                }
+                long end = System.nanoTime();
+                
+                treeBest = Math.min(treeBest, middle - start);
+                vebBest = Math.min(vebBest, end - middle);
+            }
+            
+            // Both engines must have given the same answers
+            if (checksum != 0) {
+                throw new IllegalStateException("VEBTree and RBTree disagree");
+            }
+            System.out.printf("%9d  %17.1f  %18.1f%n", size, (double) treeBest / queries, (double) vebBest / queries);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/**
+ * van Emde Boas tree for the Flying Broomstick Management System
+ * Covers the plate space with a universe of 2^21 keys and answers predecessor
+ * and successor in O(log log U): each level halves the number of key bits, so
+ * a query touches about five nodes whatever the number of registered plates
+ * Clusters are allocated only when a plate first lands in them, and universes
+ * of 64 keys or fewer are a single long word searched with zero counts
+ * A flat bitmap next to the tree answers search and plate type in O(1) and
+ * lets range queries scan whole words, using the tree only to skip empty ones
+ * Offers the same core operations as RBTree
+ */
+public class VEBTree implements PlateIndex {
+    private static final int UNIVERSE_BITS = 21; // 2^21 >= 36^4
+    private static final int WORD_BITS = 6; // Universes of up to 2^6 keys are one word
+    private static final int WORD_COUNT = (PlateCodec.UNIVERSE + 63) >>> 6;
+    
+    private final Node root = new Node(UNIVERSE_BITS);
+    private final long[] words = new long[WORD_COUNT]; // Bit k is set if plate k is registered
+    private final long[] customWords = new long[WORD_COUNT]; // Bit k is set if plate k is customized
+    private int size = 0; // Number of registered plates
+    
+    /**
+     * vEB node over a universe of 2^bits keys
+     * Above word size, min is kept here only and not stored in any cluster
+     */
+    private static final class Node {
+        final int bits; // Universe is 2^bits keys
+        final int lowBits; // Key bits resolved inside a cluster
+        int min = PlateCodec.NONE;
+        int max = PlateCodec.NONE;
+        long word; // Members of a word-sized universe
+        Node summary; // Which clusters are non-empty
+        Node[] clusters; // Allocated on first use
+        
+        Node(int bits) {
+            this.bits = bits;
+            this.lowBits = bits / 2;
+        }
+        
+        boolean isWord() {
+            return bits <= WORD_BITS;
+        }
+    }
+    
+    /**
+     * Checks if the tree is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Number of registered plates
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Inserts a standard plate
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Inserts a plate in O(log log U)
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        PlateCodec.checkKey(key);
+        int w = key >>> 6;
+        long bit = 1L << key; // Shift distance is taken mod 64
+        if ((words[w] & bit) != 0) {
+            return false;
+        }
+        
+        words[w] |= bit;
+        if (custom) {
+            customWords[w] |= bit;
+        }
+        insert(root, key);
+        size++;
+        return true;
+    }
+    
+    /**
+     * Checks if a plate exists, in O(1)
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        return PlateCodec.isKey(key) && (words[key >>> 6] & (1L << key)) != 0;
+    }
+    
+    /**
+     * Deletes a plate
+     * @param key Packed license plate number to delete
+     * @return true if deleted successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Deletes a plate and reports its type, in O(log log U)
+     * @param key Packed license plate number to delete
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND
+     */
+    @Override
+    public int remove(int key) {
+        if (!PlateCodec.isKey(key)) {
+            return NOT_FOUND;
+        }
+        
+        int w = key >>> 6;
+        long bit = 1L << key;
+        if ((words[w] & bit) == 0) {
+            return NOT_FOUND;
+        }
+        
+        int type = (customWords[w] & bit) != 0 ? CUSTOM : STANDARD;
+        words[w] &= ~bit;
+        customWords[w] &= ~bit;
+        delete(root, key);
+        size--;
+        return type;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order), in O(log log U)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        if (key <= 0) {
+            return PlateCodec.NONE;
+        }
+        return predecessor(root, Math.min(key, PlateCodec.UNIVERSE));
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order), in O(log log U)
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        if (key >= PlateCodec.UNIVERSE - 1) {
+            return PlateCodec.NONE;
+        }
+        return successor(root, Math.max(key, -1));
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key
+     * @param key Packed license plate number (need not be in the tree)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
+     */
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        result.found = search(key);
+        result.prev = predecessor(key);
+        result.next = successor(key);
+        return result;
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        final int[] result = new int[count(lo, hi)];
+        range(lo, hi, new PlateVisitor() {
+            int next = 0;
+            
+            @Override
+            public void visit(int key, boolean custom) {
+                result[next++] = key;
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * Each non-empty word is scanned directly; the tree jumps over empty stretches
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        if (lo > hi) {
+            return;
+        }
+        
+        int key = search(lo) ? lo : successor(lo);
+        while (key != PlateCodec.NONE && key <= hi) {
+            int w = key >>> 6;
+            long word = words[w] & (-1L << key);
+            if (w == hi >>> 6) {
+                word &= -1L >>> (63 - (hi & 63));
+            }
+            
+            long customWord = customWords[w];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                visitor.visit((w << 6) + bit, (customWord & (1L << bit)) != 0);
+                word &= word - 1; // Clear lowest set bit
+            }
+            
+            key = successor((w << 6) + 63);
+        }
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive), one popcount per non-empty word
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of registered plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        int count = 0;
+        int key = (lo <= hi && search(lo)) ? lo : successor(lo);
+        while (key != PlateCodec.NONE && key <= hi) {
+            int w = key >>> 6;
+            long word = words[w] & (-1L << key);
+            if (w == hi >>> 6) {
+                word &= -1L >>> (63 - (hi & 63));
+            }
+            count += Long.bitCount(word);
+            key = successor((w << 6) + 63);
+        }
+        return count;
+    }
+    
+    /**
+     * Adds key to a node's universe; key must not be present
+     */
+    private static void insert(Node node, int key) {
+        if (node.isWord()) {
+            node.word |= 1L << key;
+            node.min = Long.numberOfTrailingZeros(node.word);
+            node.max = 63 - Long.numberOfLeadingZeros(node.word);
+            return;
+        }
+        
+        if (node.min == PlateCodec.NONE) {
+            node.min = key;
+            node.max = key;
+            return;
+        }
+        
+        if (key < node.min) {
+            // The new key becomes min; the old min goes down into its cluster
+            int old = node.min;
+            node.min = key;
+            key = old;
+        }
+        if (key > node.max) {
+            node.max = key;
+        }
+        
+        int high = key >>> node.lowBits;
+        int low = key & ((1 << node.lowBits) - 1);
+        Node cluster = clusterFor(node, high);
+        if (cluster.min == PlateCodec.NONE) {
+            insert(summaryOf(node), high);
+        }
+        insert(cluster, low);
+    }
+    
+    /**
+     * Removes key from a node's universe; key must be present
+     */
+    private static void delete(Node node, int key) {
+        if (node.isWord()) {
+            node.word &= ~(1L << key);
+            node.min = node.word == 0 ? PlateCodec.NONE : Long.numberOfTrailingZeros(node.word);
+            node.max = node.word == 0 ? PlateCodec.NONE : 63 - Long.numberOfLeadingZeros(node.word);
+            return;
+        }
+        
+        if (node.min == node.max) {
+            node.min = PlateCodec.NONE;
+            node.max = PlateCodec.NONE;
+            return;
+        }
+        
+        if (key == node.min) {
+            // Pull the smallest clustered key up to be the new min, then delete it below
+            int high = node.summary.min;
+            key = (high << node.lowBits) | node.clusters[high].min;
+            node.min = key;
+        }
+        
+        int high = key >>> node.lowBits;
+        int low = key & ((1 << node.lowBits) - 1);
+        Node cluster = node.clusters[high];
+        delete(cluster, low);
+        if (cluster.min == PlateCodec.NONE) {
+            delete(node.summary, high);
+        }
+        
+        if (key == node.max) {
+            int last = node.summary.max;
+            node.max = (last == PlateCodec.NONE) ? node.min : (last << node.lowBits) | node.clusters[last].max;
+        }
+    }
+    
+    /**
+     * Largest member of a node's universe strictly below key (0 < key <= 2^bits)
+     */
+    private static int predecessor(Node node, int key) {
+        if (node.isWord()) {
+            long word = (key == 64) ? node.word : node.word & ((1L << key) - 1);
+            return word == 0 ? PlateCodec.NONE : 63 - Long.numberOfLeadingZeros(word);
+        }
+        
+        if (node.max == PlateCodec.NONE || key > node.max) {
+            return node.max; // NONE when the node is empty
+        }
+        
+        int high = key >>> node.lowBits;
+        int low = key & ((1 << node.lowBits) - 1);
+        Node cluster = (node.clusters == null) ? null : node.clusters[high];
+        if (cluster != null && cluster.min != PlateCodec.NONE && low > cluster.min) {
+            return (high << node.lowBits) | predecessor(cluster, low);
+        }
+        
+        int prevHigh = (node.summary == null || high == 0) ? PlateCodec.NONE : predecessor(node.summary, high);
+        if (prevHigh != PlateCodec.NONE) {
+            return (prevHigh << node.lowBits) | node.clusters[prevHigh].max;
+        }
+        return (key > node.min) ? node.min : PlateCodec.NONE;
+    }
+    
+    /**
+     * Smallest member of a node's universe strictly above key (-1 <= key < 2^bits - 1)
+     */
+    private static int successor(Node node, int key) {
+        if (node.isWord()) {
+            long word = (key == 63) ? 0 : node.word & (-1L << (key + 1));
+            return word == 0 ? PlateCodec.NONE : Long.numberOfTrailingZeros(word);
+        }
+        
+        if (node.min == PlateCodec.NONE || key < node.min) {
+            return node.min; // NONE when the node is empty
+        }
+        
+        int high = key >>> node.lowBits;
+        int low = key & ((1 << node.lowBits) - 1);
+        Node cluster = (node.clusters == null) ? null : node.clusters[high];
+        if (cluster != null && cluster.max != PlateCodec.NONE && low < cluster.max) {
+            return (high << node.lowBits) | successor(cluster, low);
+        }
+        
+        int nextHigh = (node.summary == null) ? PlateCodec.NONE : successor(node.summary, high);
+        if (nextHigh == PlateCodec.NONE) {
+            return PlateCodec.NONE;
+        }
+        return (nextHigh << node.lowBits) | node.clusters[nextHigh].min;
+    }
+    
+    /**
+     * Cluster high of a node, allocating the cluster array and cluster on first use
+     */
+    private static Node clusterFor(Node node, int high) {
+        if (node.clusters == null) {
+            node.clusters = new Node[1 << (node.bits - node.lowBits)];
+        }
+        if (node.clusters[high] == null) {
+            node.clusters[high] = new Node(node.lowBits);
+        }
+        return node.clusters[high];
+    }
+    
+    /**
+     * Summary of a node, allocated on first use
+     */
+    private static Node summaryOf(Node node) {
+        if (node.summary == null) {
+            node.summary = new Node(node.bits - node.lowBits);
+        }
+        return node.summary;
+    }
+}
@@ -0,0 +1,701 @@
+/**
+ * Weak AVL (rank-balanced) tree for the Flying Broomstick Management System
+ * Every node has an integer rank, a missing child has rank -1, and every rank
+ * difference between parent and child is 1 or 2, with leaves at rank 0
+ * (Haeupler, Sen and Tarjan). Inserts rebalance exactly like AVL trees; deletes
+ * only demote until the first rotation, so a delete does at most two rotations,
+ * and rebalancing is O(1) amortized over any mix of inserts and deletes
+ * Counts rotations and rank changes so churn can be compared with RBTree
+ * Offers the same operations as RBTree
+ */
+public class WAVLTree implements PlateIndex {
+    // Root node of the tree
+    private Node root;
+    
+    // Work done by rebalancing since construction or the last resetCounters()
+    private long rotations = 0; // Single rotations; a double rotation counts as two
+    private long rebalanceSteps = 0; // Promotions and demotions
+    
+    /**
+     * Node class for the WAVL tree
+     */
+    private static class Node {
+        int key; // Packed license plate number (see PlateCodec)
+        int rank; // 0 for leaves; differs from each child's rank (-1 if missing) by 1 or 2
+        boolean custom; // true for customized plates, false for standard ones
+        int size; // Number of nodes in the subtree rooted here
+        int customCount; // Number of customized plates in the subtree rooted here
+        Node left, right, parent;
+        
+        Node(int key, boolean custom) {
+            this.key = key;
+            this.custom = custom;
+            this.size = 1;
+            this.customCount = custom ? 1 : 0;
+        }
+    }
+    
+    /**
+     * Checks if the tree is empty
+     */
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+    
+    /**
+     * Returns the number of license plates in the tree
+     */
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+    
+    /**
+     * Number of rotations since construction or the last resetCounters()
+     */
+    public long rotations() {
+        return rotations;
+    }
+    
+    /**
+     * Number of promotions and demotions since construction or the last resetCounters()
+     */
+    public long rebalanceSteps() {
+        return rebalanceSteps;
+    }
+    
+    /**
+     * Zeroes the rotation and rebalance counters
+     */
+    public void resetCounters() {
+        rotations = 0;
+        rebalanceSteps = 0;
+    }
+    
+    /**
+     * Replaces the contents of the tree with plates given in ascending order
+     * Builds a balanced tree in O(n) with each node's rank set to its height; sibling
+     * heights differ by at most one, so every rank difference is 1 or 2
+     * @param keys Packed plates in strictly ascending order
+     * @param custom Plate types parallel to keys, or null if all plates are standard
+     * @param n Number of plates to take from keys
+     * @throws IllegalArgumentException if keys are not strictly ascending
+     */
+    @Override
+    public void loadSorted(int[] keys, boolean[] custom, int n) {
+        for (int i = 1; i < n; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("Plates are not in strictly ascending order at index " + i);
+            }
+        }
+        
+        root = buildFromSorted(keys, custom, 0, n - 1);
+        if (root != null) {
+            root.parent = null;
+        }
+    }
+    
+    /**
+     * Builds a balanced subtree from keys[lo..hi]
+     */
+    private Node buildFromSorted(int[] keys, boolean[] custom, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+        
+        int mid = (lo + hi) >>> 1;
+        Node node = new Node(keys[mid], custom != null && custom[mid]);
+        
+        node.left = buildFromSorted(keys, custom, lo, mid - 1);
+        node.right = buildFromSorted(keys, custom, mid + 1, hi);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+        
+        node.rank = Math.max(rankOf(node.left), rankOf(node.right)) + 1;
+        updateCounts(node);
+        return node;
+    }
+    
+    /**
+     * Inserts a new standard license plate into the tree
+     * @param key Packed license plate number
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key) {
+        return insert(key, false);
+    }
+    
+    /**
+     * Inserts a new license plate into the tree
+     * @param key Packed license plate number
+     * @param custom true for a customized plate, false for a standard one
+     * @return true if inserted successfully, false if already exists
+     */
+    @Override
+    public boolean insert(int key, boolean custom) {
+        // Standard BST descent; finding the key on the way means it already exists
+        Node current = root;
+        Node parent = null;
+        
+        while (current != null) {
+            parent = current;
+            
+            if (key < current.key) {
+                current = current.left;
+            } else if (key > current.key) {
+                current = current.right;
+            } else {
+                return false;
+            }
+        }
+        
+        // New leaf of rank 0
+        Node node = new Node(key, custom);
+        
+        if (parent == null) {
+            root = node;
+            return true;
+        }
+        
+        node.parent = parent;
+        if (key < parent.key) {
+            parent.left = node;
+        } else {
+            parent.right = node;
+        }
+        
+        // Every ancestor gains one node
+        for (Node p = parent; p != null; p = p.parent) {
+            p.size++;
+            p.customCount += node.customCount;
+        }
+        
+        fixAfterInsertion(node);
+        return true;
+    }
+    
+    /**
+     * Checks if a license plate exists in the tree
+     * @param key Packed license plate number to search for
+     * @return true if found, false otherwise
+     */
+    @Override
+    public boolean search(int key) {
+        return findNode(key) != null;
+    }
+    
+    /**
+     * Removes a license plate from the tree
+     * @param key Packed license plate number to remove
+     * @return true if removed successfully, false if not found
+     */
+    @Override
+    public boolean delete(int key) {
+        return remove(key) != NOT_FOUND;
+    }
+    
+    /**
+     * Removes a license plate from the tree and reports its type
+     * @param key Packed license plate number to remove
+     * @return CUSTOM or STANDARD for the removed plate, or NOT_FOUND if it was not in the tree
+     */
+    @Override
+    public int remove(int key) {
+        Node node = findNode(key);
+        if (node == null) {
+            return NOT_FOUND;
+        }
+        
+        int type = node.custom ? CUSTOM : STANDARD;
+        deleteNode(node);
+        return type;
+    }
+    
+    /**
+     * Internal method to delete a node
+     */
+    private void deleteNode(Node node) {
+        if (node.left != null && node.right != null) {
+            // Copy the successor's plate here and delete the successor instead
+            Node successor = findMin(node.right);
+            
+            // node now holds the successor's plate, so it and its ancestors trade
+            // the deleted plate's type for the successor's
+            int delta = (successor.custom ? 1 : 0) - (node.custom ? 1 : 0);
+            for (Node p = node; p != null; p = p.parent) {
+                p.customCount += delta;
+            }
+            
+            node.key = successor.key;
+            node.custom = successor.custom;
+            node = successor;
+        }
+        
+        // Every ancestor of the removed node loses one node
+        int removedCustom = node.custom ? 1 : 0;
+        for (Node p = node.parent; p != null; p = p.parent) {
+            p.size--;
+            p.customCount -= removedCustom;
+        }
+        
+        // Splice out the node; it has at most one child
+        Node child = (node.left != null) ? node.left : node.right;
+        Node parent = node.parent;
+        if (child != null) {
+            child.parent = parent;
+        }
+        
+        if (parent == null) {
+            root = child;
+        } else if (node == parent.left) {
+            parent.left = child;
+        } else {
+            parent.right = child;
+        }
+        
+        if (parent != null) {
+            fixAfterDeletion(child, parent);
+        }
+    }
+    
+    /**
+     * Finds a node with the given key
+     */
+    private Node findNode(int key) {
+        Node current = root;
+        
+        while (current != null) {
+            if (key < current.key) {
+                current = current.left;
+            } else if (key > current.key) {
+                current = current.right;
+            } else {
+                return current;
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Finds the minimum node in a subtree
+     */
+    private Node findMin(Node node) {
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+    
+    /**
+     * Finds the maximum node in a subtree
+     */
+    private Node findMax(Node node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+    
+    /**
+     * Finds existence, predecessor and successor of a key in a single root-to-leaf walk
+     * @param key Packed license plate number (need not be in the tree)
+     * @param result Navigation to fill in, so repeated calls need not allocate
+     * @return result
+     */
+    @Override
+    public Navigation navigate(int key, Navigation result) {
+        Node node = root;
+        Node floor = null; // Last node we moved right from
+        Node ceiling = null; // Last node we moved left from
+        
+        while (node != null && node.key != key) {
+            if (key < node.key) {
+                ceiling = node;
+                node = node.left;
+            } else {
+                floor = node;
+                node = node.right;
+            }
+        }
+        
+        result.found = node != null;
+        if (result.found) {
+            // The neighbours lie below the node when it has the matching subtree
+            if (node.left != null) {
+                floor = findMax(node.left);
+            }
+            if (node.right != null) {
+                ceiling = findMin(node.right);
+            }
+        }
+        
+        result.prev = floor != null ? floor.key : PlateCodec.NONE;
+        result.next = ceiling != null ? ceiling.key : PlateCodec.NONE;
+        return result;
+    }
+    
+    /**
+     * Finds the predecessor (previous license plate in lexicographical order)
+     * @param key Packed license plate number to find predecessor for
+     * @return Predecessor key, or PlateCodec.NONE if no predecessor exists
+     */
+    @Override
+    public int predecessor(int key) {
+        Node node = root;
+        Node floor = null;
+        
+        while (node != null) {
+            if (key > node.key) {
+                floor = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        
+        return floor != null ? floor.key : PlateCodec.NONE;
+    }
+    
+    /**
+     * Finds the successor (next license plate in lexicographical order)
+     * @param key Packed license plate number to find successor for
+     * @return Successor key, or PlateCodec.NONE if no successor exists
+     */
+    @Override
+    public int successor(int key) {
+        Node node = root;
+        Node ceiling = null;
+        
+        while (node != null) {
+            if (key < node.key) {
+                ceiling = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        
+        return ceiling != null ? ceiling.key : PlateCodec.NONE;
+    }
+    
+    /**
+     * Counts the plates that come before a key, using subtree sizes
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of plates strictly less than key
+     */
+    @Override
+    public int rank(int key) {
+        int rank = 0;
+        Node node = root;
+        
+        while (node != null) {
+            if (key > node.key) {
+                rank += sizeOf(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        
+        return rank;
+    }
+    
+    /**
+     * Finds the plate with a given position in sorted order, using subtree sizes
+     * @param k Zero-based position
+     * @return Packed plate at position k, or PlateCodec.NONE if k is out of range
+     */
+    @Override
+    public int select(int k) {
+        if (k < 0 || k >= size()) {
+            return PlateCodec.NONE;
+        }
+        
+        Node node = root;
+        while (true) {
+            int leftSize = sizeOf(node.left);
+            
+            if (k < leftSize) {
+                node = node.left;
+            } else if (k > leftSize) {
+                k -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
+    }
+    
+    /**
+     * Counts the plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of plates in [lo, hi]
+     */
+    @Override
+    public int count(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? size() : rank(hi + 1)) - rank(lo);
+    }
+    
+    /**
+     * Counts the customized plates that come before a key, using subtree counts
+     * @param key Packed license plate number (need not be in the tree)
+     * @return Number of customized plates strictly less than key
+     */
+    public int customRank(int key) {
+        int rank = 0;
+        Node node = root;
+        
+        while (node != null) {
+            if (key > node.key) {
+                rank += customCountOf(node.left) + (node.custom ? 1 : 0);
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        
+        return rank;
+    }
+    
+    /**
+     * Counts the customized plates in a given range (inclusive) without visiting them
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Number of customized plates in [lo, hi]
+     */
+    @Override
+    public int countCustom(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        return (hi == Integer.MAX_VALUE ? customCountOf(root) : customRank(hi + 1)) - customRank(lo);
+    }
+    
+    /**
+     * Finds all license plates in a given range (inclusive)
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @return Packed license plates in the range, in ascending order
+     */
+    public int[] range(int lo, int hi) {
+        final int[] result = new int[count(lo, hi)];
+        range(lo, hi, new PlateVisitor() {
+            private int next = 0;
+            
+            @Override
+            public void visit(int key, boolean custom) {
+                result[next++] = key;
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Streams all license plates in a given range (inclusive) to a visitor
+     * Walks in order through parent links, so no intermediate collection or recursion stack is built
+     * @param lo Lower bound (packed)
+     * @param hi Upper bound (packed)
+     * @param visitor Receives each plate in ascending order
+     */
+    @Override
+    public void range(int lo, int hi, PlateVisitor visitor) {
+        // Find the first node with key >= lo
+        Node node = root;
+        Node first = null;
+        while (node != null) {
+            if (lo <= node.key) {
+                first = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        
+        for (node = first; node != null && node.key <= hi; node = nextNode(node)) {
+            visitor.visit(node.key, node.custom);
+        }
+    }
+    
+    /**
+     * Finds the in-order successor of a node
+     */
+    private Node nextNode(Node node) {
+        if (node.right != null) {
+            return findMin(node.right);
+        }
+        
+        Node parent = node.parent;
+        while (parent != null && node == parent.right) {
+            node = parent;
+            parent = parent.parent;
+        }
+        
+        return parent;
+    }
+    
+    /**
+     * Restores the rank rule after a new leaf x was attached
+     * x may be a 0-child (same rank as its parent); promotions move the violation up
+     * until one rotation or double rotation absorbs it
+     */
+    private void fixAfterInsertion(Node x) {
+        Node p = x.parent;
+        
+        while (p != null && p.rank == x.rank) {
+            Node sibling = (x == p.left) ? p.right : p.left;
+            
+            if (p.rank - rankOf(sibling) == 1) {
+                // p is a 0,1 node: promote it and look one level up
+                p.rank++;
+                rebalanceSteps++;
+                x = p;
+                p = x.parent;
+                continue;
+            }
+            
+            // p is a 0,2 node: rotate; x's inner child decides single or double
+            Node inner = (x == p.left) ? x.right : x.left;
+            if (inner == null || x.rank - inner.rank == 2) {
+                rotateUp(x);
+                p.rank--;
+                rebalanceSteps++;
+            } else {
+                rotateUp(inner);
+                rotateUp(inner);
+                inner.rank++;
+                x.rank--;
+                p.rank--;
+                rebalanceSteps += 3;
+            }
+            return;
+        }
+    }
+    
+    /**
+     * Restores the rank rule after a node was spliced out of p, leaving child x (possibly null)
+     * p may have become a 2,2 leaf, or x a 3-child; demotions move the violation up
+     * until at most one rotation or double rotation absorbs it
+     */
+    private void fixAfterDeletion(Node x, Node p) {
+        if (p.left == null && p.right == null && p.rank == 1) {
+            // p became a 2,2 leaf: leaves have rank 0
+            p.rank = 0;
+            rebalanceSteps++;
+            x = p;
+            p = x.parent;
+        }
+        
+        while (p != null && p.rank - rankOf(x) == 3) {
+            Node y = (x == p.left) ? p.right : p.left; // Sibling; rank >= p.rank - 2 so never null
+            
+            if (p.rank - y.rank == 2) {
+                // y is a 2-child: demote p
+                p.rank--;
+                rebalanceSteps++;
+                x = p;
+                p = x.parent;
+                continue;
+            }
+            
+            Node outer = (y == p.right) ? y.right : y.left;
+            Node inner = (y == p.right) ? y.left : y.right;
+            if (y.rank - rankOf(outer) == 2 && y.rank - rankOf(inner) == 2) {
+                // y is a 2,2 node: demote both p and y
+                p.rank--;
+                y.rank--;
+                rebalanceSteps += 2;
+                x = p;
+                p = x.parent;
+                continue;
+            }
+            
+            if (y.rank - rankOf(outer) == 1) {
+                // Single rotation; p demotes twice if it ends up a leaf
+                rotateUp(y);
+                y.rank++;
+                p.rank--;
+                rebalanceSteps += 2;
+                if (p.left == null && p.right == null) {
+                    p.rank--;
+                    rebalanceSteps++;
+                }
+            } else {
+                // Double rotation through y's inner child
+                rotateUp(inner);
+                rotateUp(inner);
+                inner.rank += 2;
+                y.rank--;
+                p.rank -= 2;
+                rebalanceSteps += 3;
+            }
+            return;
+        }
+    }
+    
+    /**
+     * Rotates a node above its parent, keeping in-order and subtree counts
+     */
+    private void rotateUp(Node x) {
+        Node p = x.parent;
+        Node g = p.parent;
+        
+        if (x == p.left) {
+            p.left = x.right;
+            if (x.right != null) {
+                x.right.parent = p;
+            }
+            x.right = p;
+        } else {
+            p.right = x.left;
+            if (x.left != null) {
+                x.left.parent = p;
+            }
+            x.left = p;
+        }
+        p.parent = x;
+        x.parent = g;
+        
+        if (g == null) {
+            root = x;
+        } else if (g.left == p) {
+            g.left = x;
+        } else {
+            g.right = x;
+        }
+        
+        updateCounts(p);
+        updateCounts(x);
+        rotations++;
+    }
+    
+    /**
+     * Helper methods for accessing node properties with null checks
+     */
+    private static int rankOf(Node node) {
+        return node == null ? -1 : node.rank;
+    }
+    
+    private static int sizeOf(Node node) {
+        return node == null ? 0 : node.size;
+    }
+    
+    private static int customCountOf(Node node) {
+        return node == null ? 0 : node.customCount;
+    }
+    
+    private static void updateCounts(Node node) {
+        node.size = sizeOf(node.left) + sizeOf(node.right) + 1;
+        node.customCount = customCountOf(node.left) + customCountOf(node.right) + (node.custom ? 1 : 0);
+    }
+}
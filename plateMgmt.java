@@ -3,24 +3,41 @@ import java.util.*;
 
 /**
  * Flying Broomstick Management System
- * Main class for managing license plates using a Red-Black Tree
+ * Main class for managing license plates; the plates live in a PlateIndex engine,
+ * a Red-Black Tree unless another engine is chosen with --engine or -Dplate.engine
  */
 public class plateMgmt {
-    private RBTree licenseTree; // Red-Black Tree for storing license plates
+    private PlateIndex licenseIndex; // Engine storing the license plates
     private int standardPlateCount = 0; // Count of standard license plates
     private int customPlateCount = 0; // Count of customized license plates
-    private HashSet<String> customPlates = new HashSet<>(); // Track custom plates for accurate revenue
-    private static final String CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ"; // Valid characters
-    private static final int PLATE_LENGTH = 4; // Length of license plate
-    private static final int STANDARD_FEE = 4; // Standard fee in Galleons
-    private static final int CUSTOM_FEE = 3; // Additional fee for custom plates
+    static final int STANDARD_FEE = 4; // Standard fee in Galleons
+    static final int CUSTOM_FEE = 3; // Additional fee for custom plates
     private PrintWriter outputWriter; // Writer for output file
+    private PlateIndex.Navigation navigation = new PlateIndex.Navigation(); // Reused by lookupPrev/lookupNext
+    private RangePrinter rangePrinter = new RangePrinter(); // Reused by lookupRange
+    private boolean batchMode = false; // Apply runs of addLicence/dropLicence commands as sorted batches
+    private String pendingOperation = null; // Operation of the batch being collected, if any
+    private ArrayList<String> pendingPlates = new ArrayList<>(); // Plates of the batch being collected
+    private PersistentRBTree history; // Registry version after every command, or null if history is off
     
     /**
-     * Constructor for the Flying Broomstick Management System
+     * Constructor for the Flying Broomstick Management System on the default engine
      */
     public plateMgmt() {
-        licenseTree = new RBTree();
+        this(new RBTree());
+    }
+    
+    /**
+     * Constructor for the Flying Broomstick Management System on a given engine
+     * Plates the engine already holds (e.g. a reopened MappedBitmapRegistry) stay registered
+     * @param index Engine to store the plates in
+     */
+    public plateMgmt(PlateIndex index) {
+        licenseIndex = index;
+        if (!index.isEmpty()) {
+            customPlateCount = index.countCustom(0, PlateCodec.UNIVERSE - 1);
+            standardPlateCount = index.size() - customPlateCount;
+        }
     }
     
     /**
@@ -29,20 +46,109 @@ public class plateMgmt {
      */
     public void initOutput(String outputFile) {
         try {
-            outputWriter = new PrintWriter(new FileWriter(outputFile));
+            outputWriter = new PrintWriter(new BufferedWriter(new FileWriter(outputFile)));
         } catch (IOException e) {
             System.err.println("Error creating output file: " + e.getMessage());
+            licenseIndex.close(); // Leave a registry file marked clean
             System.exit(1);
         }
     }
     
     /**
-     * Close output writer
+     * Close output writer and release the plate index
      */
     public void closeOutput() {
+        flushBatch();
         if (outputWriter != null) {
             outputWriter.close();
         }
+        licenseIndex.close();
+    }
+    
+    /**
+     * Load a registry snapshot or seed file
+     * Each line holds a plate, optionally followed by "custom" or "standard" (the default).
+     * Plates already in ascending order are bulk-loaded into an empty index (in linear time
+     * for RBTree); other files are sorted first. If the index already holds plates (e.g. a
+     * reopened registry file) the seed is merged in with insertBatch instead, and plates
+     * already registered keep their type
+     * @param seedFile Seed file path
+     */
+    public void loadSeed(String seedFile) throws IOException {
+        int[] entries = new int[1024]; // Packed key shifted left once, low bit set for custom plates
+        int n = 0;
+        boolean sorted = true;
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(seedFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("//")) {
+                    continue; // Skip empty lines and comments
+                }
+                
+                String[] fields = line.split("\\s+");
+                int key = PlateCodec.encode(fields[0]);
+                if (key == PlateCodec.NONE) {
+                    System.err.println("Skipping invalid plate in seed file: " + fields[0]);
+                    continue;
+                }
+                boolean custom = fields.length > 1 && fields[1].equalsIgnoreCase("custom");
+                
+                if (n == entries.length) {
+                    entries = Arrays.copyOf(entries, n * 2);
+                }
+                entries[n] = (key << 1) | (custom ? 1 : 0);
+                if (n > 0 && entries[n - 1] >>> 1 >= key) {
+                    sorted = false;
+                }
+                n++;
+            }
+        }
+        
+        if (!sorted) {
+            Arrays.sort(entries, 0, n);
+        }
+        
+        // Split into parallel arrays, loading a repeated plate only once
+        int[] keys = new int[n];
+        boolean[] custom = new boolean[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int key = entries[i] >>> 1;
+            if (count > 0 && keys[count - 1] == key) {
+                continue;
+            }
+            keys[count] = key;
+            custom[count] = (entries[i] & 1) != 0;
+            count++;
+        }
+        
+        if (!licenseIndex.isEmpty()) {
+            boolean[] inserted = new boolean[count];
+            licenseIndex.insertBatch(keys, custom, count, inserted);
+            for (int i = 0; i < count; i++) {
+                if (!inserted[i]) {
+                    continue;
+                }
+                if (custom[i]) {
+                    customPlateCount++;
+                } else {
+                    standardPlateCount++;
+                }
+            }
+            return;
+        }
+        
+        licenseIndex.loadSorted(keys, custom, count);
+        
+        customPlateCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (custom[i]) {
+                customPlateCount++;
+            }
+        }
+        standardPlateCount = count - customPlateCount;
     }
     
     /**
@@ -50,9 +156,23 @@ public class plateMgmt {
      * @param plateNum License plate number
      */
     public void addLicence(String plateNum) {
-        if (licenseTree.insert(plateNum)) {
+        int key = PlateCodec.encode(plateNum);
+        if (key == PlateCodec.NONE) {
+            outputWriter.println("Failed to register " + plateNum + ": invalid plate number.");
+        } else {
+            reportRegistered(plateNum, key, licenseIndex.insert(key, true));
+        }
+    }
+    
+    /**
+     * Update counters and report the outcome of registering a customized plate
+     */
+    private void reportRegistered(String plateNum, int key, boolean registered) {
+        if (registered) {
             customPlateCount++;
-            customPlates.add(plateNum); // Track this as a custom plate
+            if (history != null) {
+                history.insert(key, true);
+            }
             outputWriter.println(plateNum + " registered successfully.");
         } else {
             outputWriter.println("Failed to register " + plateNum + ": already exists.");
@@ -63,21 +183,19 @@ public class plateMgmt {
      * Generate and register a random license plate
      */
     public void addRandomLicence() {
-        String plateNum;
+        int key;
         Random random = new Random();
         
-        // Generate unique random plate
+        // Generate unique random plate directly in packed form
         do {
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < PLATE_LENGTH; i++) {
-                int index = random.nextInt(CHARS.length());
-                sb.append(CHARS.charAt(index));
-            }
-            plateNum = sb.toString();
-        } while (!licenseTree.insert(plateNum));
+            key = random.nextInt(PlateCodec.UNIVERSE);
+        } while (!licenseIndex.insert(key, false));
         
         standardPlateCount++;
-        outputWriter.println(plateNum + " created and registered successfully.");
+        if (history != null) {
+            history.insert(key, false);
+        }
+        outputWriter.println(PlateCodec.decode(key) + " created and registered successfully.");
     }
     
     /**
@@ -85,11 +203,23 @@ public class plateMgmt {
      * @param plateNum License plate number
      */
     public void dropLicence(String plateNum) {
-        if (licenseTree.delete(plateNum)) {
-            // Check if it was a customized plate using our tracking set
-            if (customPlates.contains(plateNum)) {
+        int key = PlateCodec.encode(plateNum);
+        reportRemoved(plateNum, key, (key == PlateCodec.NONE) ? PlateIndex.NOT_FOUND : licenseIndex.remove(key));
+    }
+    
+    /**
+     * Update counters and report the outcome of removing a plate
+     * @param type Type of the removed plate as reported by the index, or PlateIndex.NOT_FOUND
+     */
+    private void reportRemoved(String plateNum, int key, int type) {
+        if (type != PlateIndex.NOT_FOUND) {
+            if (history != null) {
+                history.remove(key);
+            }
+            
+            // The index records whether the removed plate was customized
+            if (type == PlateIndex.CUSTOM) {
                 customPlateCount--;
-                customPlates.remove(plateNum);
             } else {
                 standardPlateCount--;
             }
@@ -101,11 +231,79 @@ public class plateMgmt {
     }
     
     /**
-     * Check if a plate is custom or standard
-     * Now uses the tracking set for accurate determination
+     * Enable or disable batch mode
+     * In batch mode a run of consecutive addLicence(plate) or dropLicence(plate) commands is
+     * collected, sorted and applied to the index in one pass; the output lines are the same as
+     * running the commands one by one
      */
-    private boolean isCustomPlate(String plateNum) {
-        return customPlates.contains(plateNum);
+    public void setBatchMode(boolean batchMode) {
+        flushBatch();
+        this.batchMode = batchMode;
+    }
+    
+    /**
+     * Apply and report the batch collected so far, if any
+     */
+    public void flushBatch() {
+        int n = pendingPlates.size();
+        if (n == 0) {
+            return;
+        }
+        
+        // Sort valid plates by key; the command index in the low bits keeps repeats in command order
+        int[] keyOf = new int[n];
+        long[] order = new long[n];
+        int valid = 0;
+        for (int i = 0; i < n; i++) {
+            keyOf[i] = PlateCodec.encode(pendingPlates.get(i));
+            if (keyOf[i] != PlateCodec.NONE) {
+                order[valid++] = ((long) keyOf[i] << 32) | i;
+            }
+        }
+        Arrays.sort(order, 0, valid);
+        
+        int[] keys = new int[valid];
+        for (int j = 0; j < valid; j++) {
+            keys[j] = (int) (order[j] >>> 32);
+        }
+        
+        if (pendingOperation.equals("addLicence")) {
+            boolean[] custom = new boolean[valid];
+            Arrays.fill(custom, true);
+            boolean[] inserted = new boolean[valid];
+            licenseIndex.insertBatch(keys, custom, valid, inserted);
+            
+            // Map results back to command order and report them in that order
+            boolean[] registered = new boolean[n];
+            for (int j = 0; j < valid; j++) {
+                registered[(int) order[j]] = inserted[j];
+            }
+            for (int i = 0; i < n; i++) {
+                String plateNum = pendingPlates.get(i);
+                if (keyOf[i] == PlateCodec.NONE) {
+                    outputWriter.println("Failed to register " + plateNum + ": invalid plate number.");
+                } else {
+                    reportRegistered(plateNum, keyOf[i], registered[i]);
+                }
+                recordVersion();
+            }
+        } else {
+            int[] types = new int[valid];
+            licenseIndex.removeBatch(keys, valid, types);
+            
+            int[] removed = new int[n];
+            Arrays.fill(removed, PlateIndex.NOT_FOUND);
+            for (int j = 0; j < valid; j++) {
+                removed[(int) order[j]] = types[j];
+            }
+            for (int i = 0; i < n; i++) {
+                reportRemoved(pendingPlates.get(i), keyOf[i], removed[i]);
+                recordVersion();
+            }
+        }
+        
+        pendingPlates.clear();
+        pendingOperation = null;
     }
     
     /**
@@ -113,7 +311,8 @@ public class plateMgmt {
      * @param plateNum License plate number
      */
     public void lookupLicence(String plateNum) {
-        if (licenseTree.search(plateNum)) {
+        int key = PlateCodec.encode(plateNum);
+        if (key != PlateCodec.NONE && licenseIndex.search(key)) {
             outputWriter.println(plateNum + " exists.");
         } else {
             outputWriter.println(plateNum + " does not exist.");
@@ -125,12 +324,19 @@ public class plateMgmt {
      * @param plateNum License plate number
      */
     public void lookupPrev(String plateNum) {
-        // First check if the plate itself exists and report differently if it doesn't
-        boolean plateExists = licenseTree.search(plateNum);
+        int key = PlateCodec.encode(plateNum);
+        if (key == PlateCodec.NONE) {
+            outputWriter.println(plateNum + " is not a valid plate number.");
+            return;
+        }
+        
+        // Existence and predecessor come from one navigate call
+        licenseIndex.navigate(key, navigation);
+        boolean plateExists = navigation.found;
         
-        String prev = licenseTree.predecessor(plateNum);
-        if (prev != null) {
-            outputWriter.println(plateNum + "'s prev is " + prev + ".");
+        int prev = navigation.prev;
+        if (prev != PlateCodec.NONE) {
+            outputWriter.println(plateNum + "'s prev is " + PlateCodec.decode(prev) + ".");
         } else {
             if (plateExists) {
                 outputWriter.println(plateNum + " has no prev.");
@@ -146,12 +352,19 @@ public class plateMgmt {
      * @param plateNum License plate number
      */
     public void lookupNext(String plateNum) {
-        // First check if the plate itself exists and report differently if it doesn't
-        boolean plateExists = licenseTree.search(plateNum);
+        int key = PlateCodec.encode(plateNum);
+        if (key == PlateCodec.NONE) {
+            outputWriter.println(plateNum + " is not a valid plate number.");
+            return;
+        }
         
-        String next = licenseTree.successor(plateNum);
-        if (next != null) {
-            outputWriter.println(plateNum + "'s next is " + next + ".");
+        // Existence and successor come from one navigate call
+        licenseIndex.navigate(key, navigation);
+        boolean plateExists = navigation.found;
+        
+        int next = navigation.next;
+        if (next != PlateCodec.NONE) {
+            outputWriter.println(plateNum + "'s next is " + PlateCodec.decode(next) + ".");
         } else {
             if (plateExists) {
                 outputWriter.println(plateNum + " has no next.");
@@ -168,25 +381,202 @@ public class plateMgmt {
      * @param hi Upper bound
      */
     public void lookupRange(String lo, String hi) {
-        String[] plates = licenseTree.range(lo, hi);
+        int loKey = PlateCodec.encode(lo);
+        int hiKey = PlateCodec.encode(hi);
+        if (loKey == PlateCodec.NONE || hiKey == PlateCodec.NONE) {
+            outputWriter.println("Invalid range " + lo + " to " + hi + ".");
+            return;
+        }
+        
+        // Plates are written to the output as the index walks them; nothing is collected first
+        rangePrinter.start("Plate numbers between " + lo + " and " + hi);
+        licenseIndex.range(loKey, hiKey, rangePrinter);
         
-        if (plates.length == 0) {
+        if (rangePrinter.count == 0) {
             outputWriter.println("No plates found between " + lo + " and " + hi + ".");
-            return;
+        } else {
+            outputWriter.println(".");
         }
+    }
+    
+    /**
+     * Writes lookupRange results straight to the output file, one plate at a time
+     */
+    private class RangePrinter implements PlateVisitor {
+        private String header; // Text written before the first plate
+        int count; // Plates written so far
         
-        StringBuilder sb = new StringBuilder();
-        sb.append("Plate numbers between ").append(lo).append(" and ").append(hi).append(":");
+        void start(String header) {
+            this.header = header;
+            this.count = 0;
+        }
         
-        for (int i = 0; i < plates.length; i++) {
-            sb.append(" ").append(plates[i]);
-            if (i < plates.length - 1) {
-                sb.append(",");
+        @Override
+        public void visit(int key, boolean custom) {
+            if (count == 0) {
+                outputWriter.print(header + ":");
+            } else {
+                outputWriter.print(',');
+            }
+            outputWriter.print(' ');
+            PlateCodec.writeTo(outputWriter, key); // Decode only while writing output
+            count++;
+        }
+    }
+    
+    /**
+     * Enable recording of a registry version after every command, for the *At lookups
+     * The current registry (e.g. a loaded seed file) becomes version 0
+     */
+    public void enableHistory() {
+        final int[] keys = new int[licenseIndex.size()];
+        final boolean[] custom = new boolean[keys.length];
+        licenseIndex.range(0, PlateCodec.UNIVERSE - 1, new PlateVisitor() {
+            int next = 0;
+            
+            @Override
+            public void visit(int key, boolean isCustom) {
+                keys[next] = key;
+                custom[next++] = isCustom;
             }
+        });
+        
+        history = new PersistentRBTree();
+        history.loadSorted(keys, custom, keys.length);
+        history.snapshot();
+    }
+    
+    /**
+     * Record the registry state after a completed command as the next version
+     */
+    private void recordVersion() {
+        if (history != null) {
+            history.snapshot();
+        }
+    }
+    
+    /**
+     * Parse a version argument, reporting it if history is off or the version is unknown
+     * @return Version number, or -1 if the lookup cannot be answered
+     */
+    private int parseVersion(String version) {
+        if (history == null) {
+            outputWriter.println("History is not enabled.");
+            return -1;
+        }
+        
+        int v;
+        try {
+            v = Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            v = -1;
+        }
+        
+        if (v < 0 || v >= history.versionCount()) {
+            outputWriter.println("Version " + version + " does not exist.");
+            return -1;
+        }
+        return v;
+    }
+    
+    /**
+     * Check if a license plate existed after a given command
+     * @param plateNum License plate number
+     * @param version Number of commands processed (0 is the starting registry)
+     */
+    public void lookupLicenceAt(String plateNum, String version) {
+        int v = parseVersion(version);
+        if (v < 0) {
+            return;
         }
-        sb.append(".");
         
-        outputWriter.println(sb.toString());
+        int key = PlateCodec.encode(plateNum);
+        if (key != PlateCodec.NONE && history.searchAt(key, v)) {
+            outputWriter.println(plateNum + " existed at version " + v + ".");
+        } else {
+            outputWriter.println(plateNum + " did not exist at version " + v + ".");
+        }
+    }
+    
+    /**
+     * Find all license plates in a given range after a given command
+     * @param lo Lower bound
+     * @param hi Upper bound
+     * @param version Number of commands processed (0 is the starting registry)
+     */
+    public void lookupRangeAt(String lo, String hi, String version) {
+        int v = parseVersion(version);
+        if (v < 0) {
+            return;
+        }
+        
+        int loKey = PlateCodec.encode(lo);
+        int hiKey = PlateCodec.encode(hi);
+        if (loKey == PlateCodec.NONE || hiKey == PlateCodec.NONE) {
+            outputWriter.println("Invalid range " + lo + " to " + hi + ".");
+            return;
+        }
+        
+        rangePrinter.start("Plate numbers between " + lo + " and " + hi + " at version " + v);
+        history.rangeAt(loKey, hiKey, v, rangePrinter);
+        
+        if (rangePrinter.count == 0) {
+            outputWriter.println("No plates found between " + lo + " and " + hi + " at version " + v + ".");
+        } else {
+            outputWriter.println(".");
+        }
+    }
+    
+    /**
+     * Count the license plates in a given range without listing them
+     * @param lo Lower bound
+     * @param hi Upper bound
+     */
+    public void countRange(String lo, String hi) {
+        int loKey = PlateCodec.encode(lo);
+        int hiKey = PlateCodec.encode(hi);
+        if (loKey == PlateCodec.NONE || hiKey == PlateCodec.NONE) {
+            outputWriter.println("Invalid range " + lo + " to " + hi + ".");
+            return;
+        }
+        
+        int count = licenseIndex.count(loKey, hiKey);
+        outputWriter.println("Number of plates between " + lo + " and " + hi + ": " + count + ".");
+    }
+    
+    /**
+     * Report how many license plates come before a plate in lexicographical order
+     * @param plateNum License plate number (need not be registered)
+     */
+    public void rankOf(String plateNum) {
+        int key = PlateCodec.encode(plateNum);
+        if (key == PlateCodec.NONE) {
+            outputWriter.println(plateNum + " is not a valid plate number.");
+            return;
+        }
+        
+        outputWriter.println(plateNum + " has rank " + licenseIndex.rank(key) + ".");
+    }
+    
+    /**
+     * Find the k-th license plate in lexicographical order
+     * @param position 1-based position
+     */
+    public void lookupNth(String position) {
+        int k;
+        try {
+            k = Integer.parseInt(position);
+        } catch (NumberFormatException e) {
+            outputWriter.println("Invalid position " + position + ".");
+            return;
+        }
+        
+        int key = licenseIndex.select(k - 1);
+        if (key == PlateCodec.NONE) {
+            outputWriter.println("No plate at position " + position + ".");
+        } else {
+            outputWriter.println("Plate at position " + position + " is " + PlateCodec.decode(key) + ".");
+        }
     }
     
     /**
@@ -199,6 +589,27 @@ public class plateMgmt {
         outputWriter.println("Current annual revenue is " + totalRevenue + " Galleons.");
     }
     
+    /**
+     * Calculate and report the annual revenue from the plates in a given range
+     * @param lo Lower bound
+     * @param hi Upper bound
+     */
+    public void revenueRange(String lo, String hi) {
+        int loKey = PlateCodec.encode(lo);
+        int hiKey = PlateCodec.encode(hi);
+        if (loKey == PlateCodec.NONE || hiKey == PlateCodec.NONE) {
+            outputWriter.println("Invalid range " + lo + " to " + hi + ".");
+            return;
+        }
+        
+        // Every plate pays the standard fee; customized ones add the premium
+        int plates = licenseIndex.count(loKey, hiKey);
+        int customPlatesInRange = licenseIndex.countCustom(loKey, hiKey);
+        int rangeRevenue = (plates * STANDARD_FEE) + (customPlatesInRange * CUSTOM_FEE);
+        
+        outputWriter.println("Annual revenue from plates between " + lo + " and " + hi + " is " + rangeRevenue + " Galleons.");
+    }
+    
     /**
      * Process a command from the input file
      * @param command Command string
@@ -207,6 +618,22 @@ public class plateMgmt {
         String[] parts = command.trim().split("[\\(\\),]");
         String operation = parts[0].trim();
         
+        if (batchMode) {
+            boolean batchable = (operation.equals("addLicence") && parts.length > 1 && !parts[1].isEmpty())
+                    || (operation.equals("dropLicence") && parts.length > 1);
+            if (batchable) {
+                if (!operation.equals(pendingOperation)) {
+                    flushBatch();
+                }
+                pendingOperation = operation;
+                pendingPlates.add(parts[1].trim());
+                return;
+            }
+            
+            // Any other command sees the effect of the collected batch first
+            flushBatch();
+        }
+        
         switch (operation) {
             case "addLicence":
                 if (parts.length > 1 && !parts[1].isEmpty()) {
@@ -215,65 +642,195 @@ public class plateMgmt {
                     addRandomLicence();
                 }
                 break;
-                
+            
             case "dropLicence":
                 if (parts.length > 1) {
                     dropLicence(parts[1].trim());
                 }
                 break;
-                
+            
             case "lookupLicence":
                 if (parts.length > 1) {
                     lookupLicence(parts[1].trim());
                 }
                 break;
-                
+            
             case "lookupPrev":
                 if (parts.length > 1) {
                     lookupPrev(parts[1].trim());
                 }
                 break;
-                
+            
             case "lookupNext":
                 if (parts.length > 1) {
                     lookupNext(parts[1].trim());
                 }
                 break;
-                
+            
             case "lookupRange":
                 if (parts.length > 2) {
                     lookupRange(parts[1].trim(), parts[2].trim());
                 }
                 break;
-                
+            
+            case "countRange":
+                if (parts.length > 2) {
+                    countRange(parts[1].trim(), parts[2].trim());
+                }
+                break;
+            
+            case "rankOf":
+                if (parts.length > 1) {
+                    rankOf(parts[1].trim());
+                }
+                break;
+            
+            case "lookupNth":
+            case "plateAt":
+                if (parts.length > 1) {
+                    lookupNth(parts[1].trim());
+                }
+                break;
+            
             case "revenue":
                 revenue();
                 break;
-                
+            
+            case "revenueRange":
+                if (parts.length > 2) {
+                    revenueRange(parts[1].trim(), parts[2].trim());
+                }
+                break;
+            
+            case "lookupLicenceAt":
+                if (parts.length > 2) {
+                    lookupLicenceAt(parts[1].trim(), parts[2].trim());
+                }
+                break;
+            
+            case "lookupRangeAt":
+                if (parts.length > 3) {
+                    lookupRangeAt(parts[1].trim(), parts[2].trim(), parts[3].trim());
+                }
+                break;
+            
             case "quit":
                 // Just exit the loop in main
                 break;
-                
+            
             default:
                 outputWriter.println("Unknown command: " + operation);
                 break;
         }
+        
+        recordVersion();
     }
     
     /**
      * Main method to run the Flying Broomstick Management System
-     * @param args Command line arguments [inputFileName]
+     * @param args Command line arguments [--seed=seedFileName] [--batch] [--history] [--engine=name]
+     *             [--tombstones=fraction] [--node-pool=capacity] [--registry=fileName]
+     *             [--flush-every=updates] inputFileName
      */
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.err.println("Usage: java plateMgmt inputFileName");
+        String inputFile = null;
+        String seedFile = null;
+        boolean batch = false;
+        boolean recordHistory = false;
+        String engine = System.getProperty("plate.engine", PlateIndex.DEFAULT_ENGINE);
+        String tombstones = null;
+        String nodePool = null;
+        String registry = null;
+        String flushEvery = null;
+        
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seedFile = arg.substring("--seed=".length());
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--history")) {
+                recordHistory = true;
+            } else if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.startsWith("--tombstones=")) {
+                tombstones = arg.substring("--tombstones=".length());
+            } else if (arg.startsWith("--node-pool=")) {
+                nodePool = arg.substring("--node-pool=".length());
+            } else if (arg.startsWith("--registry=")) {
+                registry = arg.substring("--registry=".length());
+            } else if (arg.startsWith("--flush-every=")) {
+                flushEvery = arg.substring("--flush-every=".length());
+            } else if (inputFile == null && !arg.startsWith("--")) {
+                inputFile = arg;
+            }
+        }
+        
+        if (inputFile == null) {
+            System.err.println("Usage: java plateMgmt [--seed=seedFileName] [--batch] [--history] [--engine=name] [--tombstones=fraction] [--node-pool=capacity] [--registry=fileName] [--flush-every=updates] inputFileName");
             System.exit(1);
         }
         
-        String inputFile = args[0];
         String outputFile = inputFile + "_" + "output.txt";
         
-        plateMgmt system = new plateMgmt();
+        PlateIndex index = null;
+        try {
+            // A registry file implies the mapped engine
+            index = (registry != null) ? new MappedBitmapRegistry(registry) : PlateIndex.forName(engine);
+            if (tombstones != null || nodePool != null) {
+                // Deferred deletes and node pooling are Red-Black Tree features
+                if (!(index instanceof RBTree)) {
+                    throw new IllegalArgumentException("--tombstones and --node-pool need the rbtree engine");
+                }
+                RBTree tree = (RBTree) index;
+                if (tombstones != null) {
+                    tree.setTombstoneLimit(Double.parseDouble(tombstones));
+                }
+                if (nodePool != null) {
+                    tree.setNodePool(Integer.parseInt(nodePool));
+                }
+            }
+            if (index instanceof MappedBitmapRegistry) {
+                MappedBitmapRegistry mapped = (MappedBitmapRegistry) index;
+                if (!mapped.wasCleanShutdown()) {
+                    System.err.println("Registry file " + mapped.path() + " was not closed cleanly; counters rebuilt");
+                }
+                if (flushEvery != null) {
+                    mapped.setFlushInterval(Integer.parseInt(flushEvery));
+                }
+            } else if (flushEvery != null) {
+                throw new IllegalArgumentException("--flush-every needs the mapped engine");
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening registry file: " + e.getMessage());
+            System.exit(1);
+        } catch (UncheckedIOException e) {
+            System.err.println("Error opening registry file: " + e.getCause().getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            if (index != null) {
+                index.close(); // Leave a registry file marked clean
+            }
+            System.exit(1);
+        }
+        
+        plateMgmt system = new plateMgmt(index);
+        system.setBatchMode(batch);
+        
+        if (seedFile != null) {
+            try {
+                system.loadSeed(seedFile);
+            } catch (IOException e) {
+                System.err.println("Error reading seed file: " + e.getMessage());
+                index.close(); // Leave a registry file marked clean
+                System.exit(1);
+            }
+        }
+        
+        if (recordHistory) {
+            system.enableHistory();
+        }
+        
         system.initOutput(outputFile);
         
         try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {